@@ -0,0 +1,81 @@
+package aidenwaring.intro.cashcard.reactive;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.reactive.context.ReactiveWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/*
+Many clients at once against the WebFlux + R2DBC application.
+The servlet application's twin is ServletLoadBenchmark in the root project: the same requests, client threads,
+database and connection pool size, so the two results.json files can be compared line by line.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(64)
+public class ReactiveLoadBenchmark {
+    private ConfigurableApplicationContext context;
+    private HttpClient httpClient;
+    private HttpRequest getCashCard;
+    private HttpRequest getFirstPage;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(ReactiveCashCardApplication.class)
+                .properties("server.port=0", "logging.level.root=WARN")
+                .run();
+        int port = ((ReactiveWebServerApplicationContext) context).getWebServer().getPort();
+        httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        getCashCard = request(port, "/cashcards/99");
+        getFirstPage = request(port, "/cashcards");
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public byte[] getCashCardById() throws IOException, InterruptedException {
+        return send(getCashCard);
+    }
+
+    @Benchmark
+    public byte[] getFirstPageOfCashCards() throws IOException, InterruptedException {
+        return send(getFirstPage);
+    }
+
+    private byte[] send(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(request.uri().getPath() + " returned " + response.statusCode());
+        }
+        return response.body();
+    }
+
+    private static HttpRequest request(int port, String path) {
+        String credentials = Base64.getEncoder().encodeToString("sarah1:abc123".getBytes(StandardCharsets.UTF_8));
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .header("Authorization", "Basic " + credentials)
+                .GET()
+                .build();
+    }
+}
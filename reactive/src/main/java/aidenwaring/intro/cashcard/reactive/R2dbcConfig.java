@@ -0,0 +1,21 @@
+package aidenwaring.intro.cashcard.reactive;
+
+import aidenwaring.intro.cashcard.record.MoneyConverters;
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.r2dbc.convert.R2dbcCustomConversions;
+import org.springframework.data.r2dbc.dialect.DialectResolver;
+
+/*
+Like JdbcConfig in the servlet application: Spring Boot configures Spring Data R2DBC for us,
+we only add the converters that store Money as its number of minor units.
+ */
+@Configuration
+public class R2dbcConfig {
+
+    @Bean
+    R2dbcCustomConversions r2dbcCustomConversions(ConnectionFactory connectionFactory) {
+        return R2dbcCustomConversions.of(DialectResolver.getDialect(connectionFactory), MoneyConverters.all());
+    }
+}
@@ -0,0 +1,20 @@
+package aidenwaring.intro.cashcard.reactive;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+/*
+The /cashcards API on WebFlux and R2DBC instead of Spring MVC and JDBC.
+
+No request ever holds a thread while it waits on the database, so how many requests can be in flight
+is limited by the connection pool and memory rather than by the size of a thread pool.
+Only this package is scanned; the cards and Money are shared with the servlet application (see build.gradle).
+ */
+@SpringBootApplication
+public class ReactiveCashCardApplication {
+
+	public static void main(String[] args) {
+		SpringApplication.run(ReactiveCashCardApplication.class, args);
+	}
+
+}
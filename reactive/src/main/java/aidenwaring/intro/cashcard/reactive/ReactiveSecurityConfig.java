@@ -0,0 +1,62 @@
+package aidenwaring.intro.cashcard.reactive;
+
+import aidenwaring.intro.cashcard.reactive.security.CachingReactiveAuthenticationManager;
+import aidenwaring.intro.cashcard.reactive.security.R2dbcUserDetailsService;
+import aidenwaring.intro.cashcard.security.VerifiedCredentialCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UserDetailsRepositoryReactiveAuthenticationManager;
+import org.springframework.security.config.Customizer;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+
+import java.time.Duration;
+
+/*
+The same rules as SecurityConfig, for WebFlux: HTTP Basic, CARD-OWNER for everything under /cashcards, no CSRF
+(this API has no browser clients), and the same verified-credential cache in front of the BCrypt check.
+ */
+@Configuration
+@EnableWebFluxSecurity
+public class ReactiveSecurityConfig {
+
+    @Bean
+    SecurityWebFilterChain filterChain(ServerHttpSecurity http) {
+        return http
+                .authorizeExchange(exchanges -> exchanges
+                        .pathMatchers("/cashcards/**").hasRole("CARD-OWNER")
+                        .anyExchange().authenticated())
+                .csrf(csrf -> csrf.disable())
+                .httpBasic(Customizer.withDefaults())
+                .build();
+    }
+
+    @Bean
+    PasswordEncoder passwordEncoder() {
+        return new BCryptPasswordEncoder();
+    }
+
+    @Bean
+    VerifiedCredentialCache verifiedCredentialCache(
+            @Value("${cashcard.security.credential-cache.maximum-size}") long maximumSize,
+            @Value("${cashcard.security.credential-cache.expire-after-write}") Duration expireAfterWrite) {
+        return new VerifiedCredentialCache(maximumSize, expireAfterWrite);
+    }
+
+    // Picked up by ServerHttpSecurity as the authentication manager for HTTP Basic
+    @Bean
+    ReactiveAuthenticationManager cachingAuthenticationManager(DatabaseClient databaseClient,
+                                                               PasswordEncoder passwordEncoder,
+                                                               VerifiedCredentialCache verifiedCredentialCache) {
+        UserDetailsRepositoryReactiveAuthenticationManager passwordCheck =
+                new UserDetailsRepositoryReactiveAuthenticationManager(new R2dbcUserDetailsService(databaseClient));
+        passwordCheck.setPasswordEncoder(passwordEncoder);
+        return new CachingReactiveAuthenticationManager(passwordCheck, verifiedCredentialCache);
+    }
+}
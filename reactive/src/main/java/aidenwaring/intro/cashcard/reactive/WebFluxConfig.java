@@ -0,0 +1,20 @@
+package aidenwaring.intro.cashcard.reactive;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.web.ReactivePageableHandlerMethodArgumentResolver;
+import org.springframework.data.web.ReactiveSortHandlerMethodArgumentResolver;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import org.springframework.web.reactive.result.method.annotation.ArgumentResolverConfigurer;
+
+/*
+Spring Boot only sets up Pageable controller arguments for Spring MVC, so we do it ourselves.
+The defaults are the same as the servlet application's: page 0, 20 cards, at most 2000, ?sort=amount,desc.
+ */
+@Configuration
+public class WebFluxConfig implements WebFluxConfigurer {
+
+    @Override
+    public void configureArgumentResolvers(ArgumentResolverConfigurer configurer) {
+        configurer.addCustomResolver(new ReactivePageableHandlerMethodArgumentResolver(new ReactiveSortHandlerMethodArgumentResolver()));
+    }
+}
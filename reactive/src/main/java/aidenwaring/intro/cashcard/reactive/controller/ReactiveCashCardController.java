@@ -0,0 +1,193 @@
+package aidenwaring.intro.cashcard.reactive.controller;
+
+import aidenwaring.intro.cashcard.reactive.repository.ReactiveCashCardRepository;
+import aidenwaring.intro.cashcard.reactive.repository.ReactiveCashCardSummaryRepository;
+import aidenwaring.intro.cashcard.reactive.service.ReactiveCashCardService;
+import aidenwaring.intro.cashcard.record.CashCard;
+import aidenwaring.intro.cashcard.record.CashCardCursor;
+import aidenwaring.intro.cashcard.record.CashCardSummary;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.List;
+
+/*
+The same /cashcards contract as CashCardController: the same URLs, status codes, JSON, owner checks,
+paging and sorting defaults, cursors, ETags and If-Match handling.
+Handlers return a Mono or Flux straight away; WebFlux writes the response once the database has answered.
+ */
+@RestController
+@RequestMapping("/cashcards")
+public class ReactiveCashCardController {
+    // Same upper bound Spring Data puts on the page size of Pageable requests
+    private static final int MAX_SLICE_SIZE = 2000;
+
+    private final ReactiveCashCardRepository cashCardRepository;
+    private final ReactiveCashCardSummaryRepository summaryRepository;
+    private final ReactiveCashCardService cashCardService;
+
+    public ReactiveCashCardController(ReactiveCashCardRepository cashCardRepository,
+                                      ReactiveCashCardSummaryRepository summaryRepository,
+                                      ReactiveCashCardService cashCardService) {
+        this.cashCardRepository = cashCardRepository;
+        this.summaryRepository = summaryRepository;
+        this.cashCardService = cashCardService;
+    }
+
+    @PostMapping
+    public Mono<ResponseEntity<Void>> createCashCard(@RequestBody CashCard newCashCardRequest, UriComponentsBuilder ucb,
+                                                     Principal principal) {
+        return cashCardService.create(newCashCardRequest.amount(), principal.getName())
+                .map(saved -> ResponseEntity.created(ucb.path("cashcards/{id}").buildAndExpand(saved.id()).toUri()).<Void>build());
+    }
+
+    // Sorted by amount unless the client asks otherwise, 20 cards per page by default
+    @GetMapping
+    public Mono<ResponseEntity<List<CashCard>>> findAll(Pageable pageable, Principal principal, ServerWebExchange exchange) {
+        return cashCardRepository.findByOwner(principal.getName(),
+                        PageRequest.of(
+                                pageable.getPageNumber(),
+                                pageable.getPageSize(),
+                                pageable.getSortOr(Sort.by(Sort.Direction.ASC, "amount"))))
+                .collectList()
+                .mapNotNull(cashCards -> {
+                    String eTag = listETag(cashCards);
+                    if (exchange.checkNotModified(eTag)) {
+                        return null; // WebFlux has already set up the 304 response
+                    }
+                    return ResponseEntity.ok().eTag(eTag).body(cashCards);
+                });
+    }
+
+    // Cursor-based paging, like CashCardController.findAllAfter(): one extra row tells us whether there's a next slice
+    @GetMapping(params = "after")
+    public Mono<ResponseEntity<List<CashCard>>> findAllAfter(@RequestParam String after,
+                                                             @RequestParam(defaultValue = "20") int size,
+                                                             Principal principal, ServerWebExchange exchange) {
+        CashCardCursor cursor;
+        try {
+            cursor = CashCardCursor.decode(after);
+        } catch (IllegalArgumentException e) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        int sliceSize = Math.max(1, Math.min(size, MAX_SLICE_SIZE));
+        Flux<CashCard> cashCards = cursor == null
+                ? cashCardRepository.findSeekStart(principal.getName(), sliceSize + 1)
+                : cashCardRepository.findSeekAfter(principal.getName(), cursor.amount(), cursor.id(), sliceSize + 1);
+        return cashCards.collectList().mapNotNull(fetched -> {
+            boolean hasNext = fetched.size() > sliceSize;
+            List<CashCard> content = hasNext ? fetched.subList(0, sliceSize) : fetched;
+            String eTag = listETag(content);
+            if (exchange.checkNotModified(eTag)) {
+                return null;
+            }
+
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok().eTag(eTag);
+            if (hasNext) {
+                String next = UriComponentsBuilder.fromUri(exchange.getRequest().getURI())
+                        .replaceQueryParam("after", CashCardCursor.of(content.get(content.size() - 1)).encode())
+                        .replaceQueryParam("size", sliceSize)
+                        .toUriString();
+                response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+            }
+            return response.body(content);
+        });
+    }
+
+    @GetMapping("/summary")
+    public Mono<ResponseEntity<CashCardSummary>> summary(Principal principal) {
+        return summaryRepository.findByOwner(principal.getName()).map(ResponseEntity::ok);
+    }
+
+    /*
+        All the principal's cards, NDJSON (one card per line) by default or a JSON array for application/json.
+        Each card is written as it's read, and only as fast as the client reads them: the Flux asks the database
+        for more rows when the response has been flushed, so nothing buffers up in between.
+     */
+    @GetMapping(value = "/export", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public Flux<CashCard> exportCashCards(Principal principal) {
+        return cashCardRepository.findAllByOwnerForExport(principal.getName());
+    }
+
+    // The card's version is its ETag; If-None-Match with the current one gets 304 Not Modified
+    @GetMapping("/{requestedId}")
+    public Mono<ResponseEntity<CashCard>> findById(@PathVariable Long requestedId, Principal principal,
+                                                   ServerWebExchange exchange) {
+        return cashCardRepository.findByIdAndOwner(requestedId, principal.getName())
+                .mapNotNull(cashCard -> {
+                    String eTag = eTag(cashCard);
+                    if (exchange.checkNotModified(eTag)) {
+                        return null;
+                    }
+                    return ResponseEntity.ok().eTag(eTag).body(cashCard);
+                })
+                // Empty either because there's no such card, or because we've answered 304 already
+                .switchIfEmpty(Mono.defer(() -> exchange.isNotModified()
+                        ? Mono.<ResponseEntity<CashCard>>empty()
+                        : Mono.just(ResponseEntity.notFound().<CashCard>build())));
+    }
+
+    // With If-Match the update only goes through while the card is still at that version, otherwise 412
+    @PutMapping("/{requestedId}")
+    public Mono<ResponseEntity<Void>> putCashCard(@PathVariable Long requestedId, @RequestBody CashCard cashCardUpdate,
+                                                  @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                  Principal principal) {
+        return cashCardService.update(requestedId, cashCardUpdate.amount(), principal.getName(), expectedVersion(ifMatch))
+                .map(updated -> updated
+                        ? ResponseEntity.noContent().<Void>build()
+                        : ResponseEntity.notFound().<Void>build())
+                .onErrorReturn(OptimisticLockingFailureException.class,
+                        ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build());
+    }
+
+    @DeleteMapping("/{id}")
+    public Mono<ResponseEntity<Void>> deleteCashCard(@PathVariable Long id, Principal principal) {
+        return cashCardService.delete(id, principal.getName())
+                .map(deleted -> deleted
+                        ? ResponseEntity.noContent().<Void>build()
+                        : ResponseEntity.notFound().<Void>build());
+    }
+
+    private static String eTag(CashCard cashCard) {
+        return "\"" + cashCard.version() + "\"";
+    }
+
+    // Any change to any card in the list (or to which cards are in it) changes the ETag
+    private static String listETag(List<CashCard> cashCards) {
+        StringBuilder versions = new StringBuilder(cashCards.size() * 16);
+        for (CashCard cashCard : cashCards) {
+            versions.append(cashCard.id()).append(':').append(cashCard.version()).append(',');
+        }
+        return "\"" + DigestUtils.md5DigestAsHex(versions.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    // null for no If-Match or "*"; anything that isn't one of our ETags can't match any version, so it's -1
+    private static Long expectedVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String eTag = ifMatch.trim();
+        if (eTag.length() > 2 && eTag.startsWith("\"") && eTag.endsWith("\"")) {
+            try {
+                return Long.valueOf(eTag.substring(1, eTag.length() - 1));
+            } catch (NumberFormatException e) {
+                return -1L;
+            }
+        }
+        return -1L;
+    }
+}
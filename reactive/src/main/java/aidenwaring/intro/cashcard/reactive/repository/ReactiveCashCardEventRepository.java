@@ -0,0 +1,33 @@
+package aidenwaring.intro.cashcard.reactive.repository;
+
+import aidenwaring.intro.cashcard.record.CashCardEvent;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+/*
+The outbox rows of CashCardEventRepository.append(), inserted in the caller's reactive transaction.
+This application doesn't relay them: the servlet application's CashCardEventRelay numbers and publishes them
+on its next poll (cashcard.events.relay-interval), like changes made through any other instance.
+ */
+@Repository
+public class ReactiveCashCardEventRepository {
+    private static final String INSERT = "INSERT INTO cash_card_event (type, card_id, owner, amount) VALUES (:type, :id, :owner, :amount)";
+
+    private final DatabaseClient databaseClient;
+
+    public ReactiveCashCardEventRepository(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    public Mono<Void> append(CashCardEvent event) {
+        DatabaseClient.GenericExecuteSpec insert = databaseClient.sql(INSERT)
+                .bind("type", event.type().name())
+                .bind("id", event.id())
+                .bind("owner", event.owner());
+        insert = event.amount() == null
+                ? insert.bindNull("amount", Long.class)
+                : insert.bind("amount", event.amount().minorUnits());
+        return insert.fetch().rowsUpdated().then();
+    }
+}
@@ -0,0 +1,43 @@
+package aidenwaring.intro.cashcard.reactive.repository;
+
+import aidenwaring.intro.cashcard.record.CashCard;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.data.repository.reactive.ReactiveSortingRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/*
+The reactive counterpart of CashCardRepository: the same queries, but every method returns as soon as it's called,
+and the rows arrive (as a Mono or Flux) once the database has sent them.
+A Flux only fetches as many rows as its subscriber has asked for, so a slow client slows the query down
+instead of rows piling up in memory.
+ */
+public interface ReactiveCashCardRepository extends ReactiveCrudRepository<CashCard, Long>,
+        ReactiveSortingRepository<CashCard, Long> {
+    Mono<CashCard> findByIdAndOwner(Long id, String owner);
+
+    // The same lookup, but the row stays locked until the transaction ends, so its amount can't change under a write
+    @Query("SELECT * FROM cash_card WHERE id = :id AND owner = :owner FOR UPDATE")
+    Mono<CashCard> findForUpdateByIdAndOwner(@Param("id") Long id, @Param("owner") String owner);
+
+    // The Pageable's offset, size and sort become the query's OFFSET, LIMIT and ORDER BY
+    Flux<CashCard> findByOwner(String owner, Pageable pageable);
+
+    // Keyset (seek) pagination, exactly like CashCardRepository.findSeekStart()/findSeekAfter()
+    @Query("SELECT * FROM cash_card WHERE owner = :owner ORDER BY amount, id LIMIT :limit")
+    Flux<CashCard> findSeekStart(@Param("owner") String owner, @Param("limit") int limit);
+
+    @Query("""
+            SELECT * FROM cash_card
+            WHERE owner = :owner AND amount >= :amount AND (amount > :amount OR id > :id)
+            ORDER BY amount, id LIMIT :limit""")
+    Flux<CashCard> findSeekAfter(@Param("owner") String owner, @Param("amount") long amount,
+                                 @Param("id") Long id, @Param("limit") int limit);
+
+    // For GET /cashcards/export, in the same order as the servlet application's export
+    @Query("SELECT * FROM cash_card WHERE owner = :owner ORDER BY amount, id")
+    Flux<CashCard> findAllByOwnerForExport(@Param("owner") String owner);
+}
@@ -0,0 +1,88 @@
+package aidenwaring.intro.cashcard.reactive.repository;
+
+import aidenwaring.intro.cashcard.record.CashCardSummary;
+import aidenwaring.intro.cashcard.record.Money;
+import io.r2dbc.spi.Readable;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+/*
+The same per-owner summary rows as CashCardSummaryRepository, maintained the same way:
+count and total as deltas, and min or max only looked up again when the card holding it goes away.
+The servlet and reactive applications can share a database without the summaries drifting.
+Only single cards are written here, as there are no batch endpoints.
+ */
+@Repository
+public class ReactiveCashCardSummaryRepository {
+    private static final String ADD = """
+            UPDATE cash_card_summary
+            SET card_count = card_count + 1, total = total + :amount,
+                min_amount = LEAST(COALESCE(min_amount, :amount), :amount),
+                max_amount = GREATEST(COALESCE(max_amount, :amount), :amount)
+            WHERE owner = :owner""";
+    private static final String INSERT = """
+            INSERT INTO cash_card_summary (owner, card_count, total, min_amount, max_amount)
+            VALUES (:owner, 1, :amount, :amount, :amount)""";
+    private static final String REMOVE = """
+            UPDATE cash_card_summary SET card_count = card_count - 1, total = total - :amount
+            WHERE owner = :owner""";
+    private static final String REFRESH_MIN = """
+            UPDATE cash_card_summary
+            SET min_amount = (SELECT amount FROM cash_card WHERE owner = :owner ORDER BY amount LIMIT 1)
+            WHERE owner = :owner AND min_amount >= :amount""";
+    private static final String REFRESH_MAX = """
+            UPDATE cash_card_summary
+            SET max_amount = (SELECT amount FROM cash_card WHERE owner = :owner ORDER BY amount DESC LIMIT 1)
+            WHERE owner = :owner AND max_amount <= :amount""";
+
+    private final DatabaseClient databaseClient;
+
+    public ReactiveCashCardSummaryRepository(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    public Mono<CashCardSummary> findByOwner(String owner) {
+        return databaseClient.sql("SELECT * FROM cash_card_summary WHERE owner = :owner")
+                .bind("owner", owner)
+                .map(ReactiveCashCardSummaryRepository::summary)
+                .one()
+                .defaultIfEmpty(CashCardSummary.EMPTY);
+    }
+
+    public Mono<Void> added(String owner, Money amount) {
+        return update(ADD, owner, amount)
+                .flatMap(updated -> updated > 0 ? Mono.<Void>empty() : update(INSERT, owner, amount)
+                        // Someone else just created the owner's row
+                        .onErrorResume(DataIntegrityViolationException.class, e -> update(ADD, owner, amount))
+                        .then());
+    }
+
+    public Mono<Void> removed(String owner, Money amount) {
+        return update(REMOVE, owner, amount)
+                .then(update(REFRESH_MIN, owner, amount))
+                .then(update(REFRESH_MAX, owner, amount))
+                .then();
+    }
+
+    private Mono<Long> update(String sql, String owner, Money amount) {
+        return databaseClient.sql(sql)
+                .bind("owner", owner)
+                .bind("amount", amount.minorUnits())
+                .fetch()
+                .rowsUpdated();
+    }
+
+    private static CashCardSummary summary(Readable row) {
+        return new CashCardSummary(
+                row.get("card_count", Long.class),
+                Money.ofMinorUnits(row.get("total", Long.class)),
+                money(row.get("min_amount", Long.class)),
+                money(row.get("max_amount", Long.class)));
+    }
+
+    private static Money money(Long minorUnits) {
+        return minorUnits == null ? null : Money.ofMinorUnits(minorUnits);
+    }
+}
@@ -0,0 +1,45 @@
+package aidenwaring.intro.cashcard.reactive.security;
+
+import aidenwaring.intro.cashcard.security.VerifiedCredentialCache;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetails;
+import reactor.core.publisher.Mono;
+
+/*
+The reactive twin of CachingAuthenticationProvider: credentials that already passed the BCrypt check
+are answered from the VerifiedCredentialCache, everything else goes to the delegate as before.
+The delegate runs BCrypt on a separate scheduler, so a cache miss doesn't block the event loop.
+ */
+public class CachingReactiveAuthenticationManager implements ReactiveAuthenticationManager {
+    private final ReactiveAuthenticationManager delegate;
+    private final VerifiedCredentialCache verifiedCredentials;
+
+    public CachingReactiveAuthenticationManager(ReactiveAuthenticationManager delegate,
+                                                VerifiedCredentialCache verifiedCredentials) {
+        this.delegate = delegate;
+        this.verifiedCredentials = verifiedCredentials;
+    }
+
+    @Override
+    public Mono<Authentication> authenticate(Authentication authentication) {
+        Object credentials = authentication.getCredentials();
+        if (credentials == null) {
+            return delegate.authenticate(authentication);
+        }
+
+        String username = authentication.getName();
+        String password = credentials.toString();
+        UserDetails user = verifiedCredentials.get(username, password);
+        if (user != null) {
+            return Mono.just(UsernamePasswordAuthenticationToken.authenticated(user, null, user.getAuthorities()));
+        }
+        return delegate.authenticate(authentication)
+                .doOnNext(result -> {
+                    if (result.getPrincipal() instanceof UserDetails verifiedUser) {
+                        verifiedCredentials.put(username, password, verifiedUser);
+                    }
+                });
+    }
+}
@@ -0,0 +1,35 @@
+package aidenwaring.intro.cashcard.reactive.security;
+
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+
+/*
+The card owners from the same cash_card_user table as the servlet application, with their precomputed BCrypt hashes.
+Looked up per login rather than held in memory: repeat logins are served by the verified-credential cache anyway.
+ */
+public class R2dbcUserDetailsService implements ReactiveUserDetailsService {
+    private final DatabaseClient databaseClient;
+
+    public R2dbcUserDetailsService(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    @Override
+    public Mono<UserDetails> findByUsername(String username) {
+        return databaseClient.sql("SELECT password, roles FROM cash_card_user WHERE username = :username AND enabled")
+                .bind("username", username)
+                .map(row -> User.withUsername(username)
+                        .password(row.get("password", String.class))
+                        .roles(Arrays.stream(row.get("roles", String.class).split(","))
+                                .map(String::trim)
+                                .filter(role -> !role.isEmpty())
+                                .toArray(String[]::new))
+                        .build())
+                .one();
+    }
+}
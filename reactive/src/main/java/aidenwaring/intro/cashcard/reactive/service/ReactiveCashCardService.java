@@ -0,0 +1,75 @@
+package aidenwaring.intro.cashcard.reactive.service;
+
+import aidenwaring.intro.cashcard.reactive.repository.ReactiveCashCardEventRepository;
+import aidenwaring.intro.cashcard.reactive.repository.ReactiveCashCardRepository;
+import aidenwaring.intro.cashcard.reactive.repository.ReactiveCashCardSummaryRepository;
+import aidenwaring.intro.cashcard.record.CashCard;
+import aidenwaring.intro.cashcard.record.CashCardEvent;
+import aidenwaring.intro.cashcard.record.Money;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+
+/*
+Card writes, each with the owner's summary update and its outbox event in the same (reactive) transaction,
+like CashCardService, so consumers of the servlet application's change stream see these changes too.
+Unlike CashCardService there's no card cache: reads go straight to the repository.
+ */
+@Service
+public class ReactiveCashCardService {
+    private final ReactiveCashCardRepository cashCardRepository;
+    private final ReactiveCashCardSummaryRepository summaryRepository;
+    private final ReactiveCashCardEventRepository eventRepository;
+    private final TransactionalOperator transactionalOperator;
+
+    public ReactiveCashCardService(ReactiveCashCardRepository cashCardRepository,
+                                   ReactiveCashCardSummaryRepository summaryRepository,
+                                   ReactiveCashCardEventRepository eventRepository,
+                                   TransactionalOperator transactionalOperator) {
+        this.cashCardRepository = cashCardRepository;
+        this.summaryRepository = summaryRepository;
+        this.eventRepository = eventRepository;
+        this.transactionalOperator = transactionalOperator;
+    }
+
+    public Mono<CashCard> create(Money amount, String owner) {
+        return cashCardRepository.save(new CashCard(null, amount, owner))
+                .flatMap(saved -> summaryRepository.added(owner, amount)
+                        .then(eventRepository.append(CashCardEvent.created(saved.id(), owner, amount)))
+                        .thenReturn(saved))
+                .as(transactionalOperator::transactional);
+    }
+
+    /*
+        Emits false if the card doesn't exist or belongs to someone else.
+        With an expectedVersion (the client's If-Match) it fails with OptimisticLockingFailureException
+        unless the card is still at that version.
+     */
+    public Mono<Boolean> update(Long id, Money amount, String owner, Long expectedVersion) {
+        return cashCardRepository.findForUpdateByIdAndOwner(id, owner)
+                .flatMap(cashCard -> {
+                    if (expectedVersion != null && !expectedVersion.equals(cashCard.version())) {
+                        return Mono.error(new OptimisticLockingFailureException(
+                                "Card " + id + " is at version " + cashCard.version() + ", not " + expectedVersion));
+                    }
+                    return cashCardRepository.save(new CashCard(cashCard.id(), amount, owner, cashCard.version()))
+                            .then(summaryRepository.removed(owner, cashCard.amount()))
+                            .then(summaryRepository.added(owner, amount))
+                            .then(eventRepository.append(CashCardEvent.updated(id, owner, amount)))
+                            .thenReturn(true);
+                })
+                .defaultIfEmpty(false)
+                .as(transactionalOperator::transactional);
+    }
+
+    public Mono<Boolean> delete(Long id, String owner) {
+        return cashCardRepository.findForUpdateByIdAndOwner(id, owner)
+                .flatMap(cashCard -> cashCardRepository.deleteById(id)
+                        .then(summaryRepository.removed(owner, cashCard.amount()))
+                        .then(eventRepository.append(CashCardEvent.deleted(id, owner)))
+                        .thenReturn(true))
+                .defaultIfEmpty(false)
+                .as(transactionalOperator::transactional);
+    }
+}
@@ -0,0 +1,172 @@
+package aidenwaring.intro.cashcard.reactive;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.net.URI;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The same requests and expectations as CashCardControllerTest, against the WebFlux + R2DBC application
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class ReactiveCashCardControllerTest {
+    @Autowired
+    WebTestClient webTestClient;
+
+    @Autowired
+    DatabaseClient databaseClient;
+
+    @Test
+    void shouldReturnACashCardWhenDataIsSaved() {
+        get("/cashcards/99", "sarah1", "abc123")
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"0\"")
+                .expectBody()
+                .jsonPath("$.id").isEqualTo(99)
+                .jsonPath("$.amount").isEqualTo(123.45)
+                .jsonPath("$.version").doesNotExist();
+    }
+
+    @Test
+    void shouldNotReturnACashCardWithAnUnknownIdOrAnotherOwner() {
+        get("/cashcards/1000", "sarah1", "abc123").expectStatus().isNotFound();
+        get("/cashcards/102", "sarah1", "abc123").expectStatus().isNotFound();
+    }
+
+    @Test
+    void shouldRejectUsersWhoAreNotAuthenticatedOrNotCardOwners() {
+        get("/cashcards/99", "sarah1", "BAD-PASSWORD").expectStatus().isUnauthorized();
+        get("/cashcards/99", "hank-owns-no-cards", "qrs456").expectStatus().isForbidden();
+    }
+
+    @Test
+    void shouldReturnASortedPageOfCashCardsWithTheSameDefaultsAsTheServletApi() {
+        get("/cashcards", "sarah1", "abc123")
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(3)
+                .jsonPath("$[0].amount").isEqualTo(1.0)
+                .jsonPath("$[2].amount").isEqualTo(150.0);
+
+        get("/cashcards?page=0&size=1&sort=amount,desc", "sarah1", "abc123")
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(1)
+                .jsonPath("$[0].amount").isEqualTo(150.0);
+    }
+
+    @Test
+    void shouldLinkToTheNextSliceOfCashCards() {
+        String next = get("/cashcards?after=&size=2", "sarah1", "abc123")
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .returnResult()
+                .getResponseHeaders().getFirst(HttpHeaders.LINK);
+        assertThat(next).endsWith(">; rel=\"next\"");
+
+        get(next.substring(1, next.indexOf('>')), "sarah1", "abc123")
+                .expectStatus().isOk()
+                .expectHeader().doesNotExist(HttpHeaders.LINK)
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(1)
+                .jsonPath("$[0].id").isEqualTo(101);
+    }
+
+    @Test
+    void shouldCreateUpdateAndDeleteACashCardAndKeepTheSummaryUpToDate() {
+        URI location = webTestClient.post().uri("/cashcards")
+                .headers(headers -> headers.setBasicAuth("sarah1", "abc123"))
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"amount\": 250.00}")
+                .exchange()
+                .expectStatus().isCreated()
+                .returnResult(Void.class)
+                .getResponseHeaders().getLocation();
+
+        webTestClient.put().uri(location.getPath())
+                .headers(headers -> {
+                    headers.setBasicAuth("sarah1", "abc123");
+                    headers.setIfMatch("\"5\"");
+                })
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"amount\": 500.00}")
+                .exchange()
+                .expectStatus().isEqualTo(412);
+        webTestClient.put().uri(location.getPath())
+                .headers(headers -> headers.setBasicAuth("sarah1", "abc123"))
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"amount\": 500.00}")
+                .exchange()
+                .expectStatus().isNoContent();
+
+        get("/cashcards/summary", "sarah1", "abc123")
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(4)
+                .jsonPath("$.sum").isEqualTo(774.45)
+                .jsonPath("$.max").isEqualTo(500.0);
+
+        webTestClient.delete().uri(location.getPath())
+                .headers(headers -> headers.setBasicAuth("sarah1", "abc123"))
+                .exchange()
+                .expectStatus().isNoContent();
+        get(location.getPath(), "sarah1", "abc123").expectStatus().isNotFound();
+        get("/cashcards/summary", "sarah1", "abc123")
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(3)
+                .jsonPath("$.max").isEqualTo(150.0);
+
+        // The same outbox rows as the servlet application writes, for its relay to publish
+        long id = Long.parseLong(location.getPath().substring(location.getPath().lastIndexOf('/') + 1));
+        List<String> events = databaseClient.sql("SELECT type, amount FROM cash_card_event WHERE card_id = :id ORDER BY id")
+                .bind("id", id)
+                .map(row -> row.get("type", String.class) + ":" + row.get("amount", Long.class))
+                .all()
+                .collectList()
+                .block();
+        assertThat(events).containsExactly("CREATED:25000", "UPDATED:50000", "DELETED:null");
+    }
+
+    @Test
+    void shouldReturnNotModifiedWhenACashCardHasNotChanged() {
+        webTestClient.get().uri("/cashcards/99")
+                .headers(headers -> {
+                    headers.setBasicAuth("sarah1", "abc123");
+                    headers.setIfNoneMatch("\"0\"");
+                })
+                .exchange()
+                .expectStatus().isNotModified();
+    }
+
+    @Test
+    void shouldExportAllCashCardsAsNdjson() {
+        String export = webTestClient.get().uri("/cashcards/export")
+                .headers(headers -> headers.setBasicAuth("sarah1", "abc123"))
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertThat(export.lines()).containsExactly(
+                "{\"id\":100,\"amount\":1.0,\"owner\":\"sarah1\"}",
+                "{\"id\":99,\"amount\":123.45,\"owner\":\"sarah1\"}",
+                "{\"id\":101,\"amount\":150.0,\"owner\":\"sarah1\"}");
+    }
+
+    private WebTestClient.ResponseSpec get(String uri, String username, String password) {
+        return webTestClient.get().uri(uri)
+                .headers(headers -> headers.setBasicAuth(username, password))
+                .exchange();
+    }
+}
@@ -0,0 +1,94 @@
+package aidenwaring.intro.cashcard;
+
+import aidenwaring.intro.cashcard.service.CashCardSummaryService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/*
+Creating N cards through POST /cashcards/batch (one NDJSON request) against N single POST /cashcards requests.
+An operation is the N cards either way, so the two scores compare directly as "N cards per second".
+The cards created are deleted after every iteration, so the table (and the outbox) stay the same size throughout.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CashCardBatchHttpBenchmark {
+    @Param({"100", "1000"})
+    int cards;
+
+    private RunningApplication application;
+    private HttpClient httpClient;
+    private HttpRequest createOne;
+    private HttpRequest createBatch;
+
+    @Setup
+    public void setUp(RunningApplication application) {
+        this.application = application;
+        httpClient = HttpClient.newHttpClient();
+        createOne = post("/cashcards", "application/json", "{\"amount\": 123.45}");
+        String ndjson = IntStream.range(0, cards)
+                .mapToObj(i -> "{\"amount\": " + (i + 1) + ".25}")
+                .collect(Collectors.joining("\n"));
+        createBatch = post("/cashcards/batch", "application/x-ndjson", ndjson);
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteCreatedCards() {
+        JdbcTemplate jdbcTemplate = application.bean(JdbcTemplate.class);
+        // Everything but data.sql's cards
+        jdbcTemplate.update("DELETE FROM cash_card WHERE owner = 'sarah1' AND id NOT IN (99, 100, 101)");
+        jdbcTemplate.update("DELETE FROM cash_card_event WHERE owner = 'sarah1'");
+        application.bean(CashCardSummaryService.class).verifyAll();
+    }
+
+    @Benchmark
+    public int createOneByOne() throws IOException, InterruptedException {
+        int created = 0;
+        for (int i = 0; i < cards; i++) {
+            created += send(createOne, 201).length;
+        }
+        return created;
+    }
+
+    @Benchmark
+    public byte[] createAsBatch() throws IOException, InterruptedException {
+        return send(createBatch, 200);
+    }
+
+    private HttpRequest post(String path, String contentType, String body) {
+        String credentials = Base64.getEncoder().encodeToString("sarah1:abc123".getBytes(StandardCharsets.UTF_8));
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + application.port + path))
+                .header("Authorization", "Basic " + credentials)
+                .header("Content-Type", contentType)
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private byte[] send(HttpRequest request, int expectedStatus) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != expectedStatus) {
+            throw new IllegalStateException("POST " + request.uri().getPath() + " returned " + response.statusCode());
+        }
+        return response.body();
+    }
+}
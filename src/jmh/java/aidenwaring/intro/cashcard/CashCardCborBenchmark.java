@@ -0,0 +1,77 @@
+package aidenwaring.intro.cashcard;
+
+import aidenwaring.intro.cashcard.record.CashCard;
+import aidenwaring.intro.cashcard.record.Money;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+JSON against CBOR (see CborConfig) for a single card and a page of a thousand, each with the ObjectMapper
+Spring MVC would use for it. Time per operation here, bytes allocated per operation with -prof gc,
+and the payload sizes are printed once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CashCardCborBenchmark {
+    @Param({"json", "cbor"})
+    String format;
+
+    private ObjectMapper objectMapper;
+    private JavaType listOfCashCards;
+    private CashCard cashCard;
+    private List<CashCard> page;
+    private byte[] cashCardBytes;
+    private byte[] pageBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = format.equals("cbor")
+                ? CborConfig.cborObjectMapper(Jackson2ObjectMapperBuilder.json())
+                : Jackson2ObjectMapperBuilder.json().build();
+        listOfCashCards = objectMapper.getTypeFactory().constructCollectionType(List.class, CashCard.class);
+        cashCard = new CashCard(99L, Money.parse("123.45"), "sarah1");
+        page = new ArrayList<>();
+        for (long id = 0; id < 1000; id++) {
+            page.add(new CashCard(1_000_000 + id, Money.ofMinorUnits(id * 7919 % 50000 + 25), "sarah1"));
+        }
+        cashCardBytes = objectMapper.writeValueAsBytes(cashCard);
+        pageBytes = objectMapper.writeValueAsBytes(page);
+        System.out.printf("%n%s: a card is %d bytes, a page of %d cards %d bytes%n",
+                format, cashCardBytes.length, page.size(), pageBytes.length);
+    }
+
+    @Benchmark
+    public byte[] serializeCashCard() throws IOException {
+        return objectMapper.writeValueAsBytes(cashCard);
+    }
+
+    @Benchmark
+    public CashCard deserializeCashCard() throws IOException {
+        return objectMapper.readValue(cashCardBytes, CashCard.class);
+    }
+
+    @Benchmark
+    public byte[] serializePage() throws IOException {
+        return objectMapper.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public List<CashCard> deserializePage() throws IOException {
+        return objectMapper.readValue(pageBytes, listOfCashCards);
+    }
+}
@@ -0,0 +1,73 @@
+package aidenwaring.intro.cashcard;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/*
+The same GETs asked for as JSON and as CBOR (see CborConfig), end to end over HTTP: one card, and a page of a thousand.
+The client only reads the bytes, so the difference is the server's serialization plus the bytes on the wire.
+Allocation (-prof gc) covers the server and the client together, as both run in the benchmark's JVM.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CashCardCborHttpBenchmark {
+    @Param({"application/json", "application/cbor"})
+    String accept;
+
+    private HttpClient httpClient;
+    private HttpRequest getCashCard;
+    private HttpRequest getPage;
+
+    @Setup
+    public void setUp(RunningApplication application) throws IOException, InterruptedException {
+        application.addCashCards("sarah1", 1000);
+        httpClient = HttpClient.newHttpClient();
+        getCashCard = request(application, "/cashcards/99");
+        getPage = request(application, "/cashcards?page=0&size=1000");
+        System.out.printf("%n%s: a card is %d bytes, a page %d bytes%n",
+                accept, getCashCardById().length, getPageOfCashCards().length);
+    }
+
+    @Benchmark
+    public byte[] getCashCardById() throws IOException, InterruptedException {
+        return send(getCashCard);
+    }
+
+    @Benchmark
+    public byte[] getPageOfCashCards() throws IOException, InterruptedException {
+        return send(getPage);
+    }
+
+    private HttpRequest request(RunningApplication application, String path) {
+        String credentials = Base64.getEncoder().encodeToString("sarah1:abc123".getBytes(StandardCharsets.UTF_8));
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + application.port + path))
+                .header("Authorization", "Basic " + credentials)
+                .header("Accept", accept)
+                .GET()
+                .build();
+    }
+
+    private byte[] send(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("GET " + request.uri().getPath() + " returned " + response.statusCode());
+        }
+        return response.body();
+    }
+}
@@ -0,0 +1,64 @@
+package aidenwaring.intro.cashcard;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/*
+The full secured request path: HTTP Basic authentication, authorization, the controller, the repository and JSON.
+Reported as throughput, so it reads directly as requests per second for a single client thread.
+
+credentialCacheSize=0 turns off the verified-credential cache, so every request pays for the BCrypt check again:
+comparing the two runs shows what the cache buys us.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CashCardHttpBenchmark {
+    @Param({"10000", "0"})
+    int credentialCacheSize;
+
+    private final RunningApplication application = new RunningApplication();
+    private HttpClient httpClient;
+    private HttpRequest getCashCard;
+
+    @Setup
+    public void setUp() {
+        application.start("cashcard.security.credential-cache.maximum-size=" + credentialCacheSize);
+        httpClient = HttpClient.newHttpClient();
+        String credentials = Base64.getEncoder().encodeToString("sarah1:abc123".getBytes(StandardCharsets.UTF_8));
+        getCashCard = HttpRequest.newBuilder(URI.create("http://localhost:" + application.port + "/cashcards/99"))
+                .header("Authorization", "Basic " + credentials)
+                .GET()
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        application.stop();
+    }
+
+    @Benchmark
+    public byte[] getCashCardById() throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = httpClient.send(getCashCard, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("GET /cashcards/99 returned " + response.statusCode());
+        }
+        return response.body();
+    }
+}
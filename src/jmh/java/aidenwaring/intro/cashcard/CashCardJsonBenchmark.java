@@ -0,0 +1,82 @@
+package aidenwaring.intro.cashcard;
+
+import aidenwaring.intro.cashcard.record.CashCard;
+import aidenwaring.intro.cashcard.record.Money;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+(De)serialization of the CashCard record, configured the way Spring MVC configures Jackson.
+CashCardJsonTest checks that the JSON is right; this measures how much it costs (time, and bytes allocated with -prof gc).
+The Money benchmarks isolate the amount itself, which used to be a boxed Double.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CashCardJsonBenchmark {
+    private ObjectMapper objectMapper;
+    private JavaType listOfCashCards;
+    private CashCard cashCard;
+    private List<CashCard> page;
+    private byte[] cashCardJson;
+    private byte[] pageJson;
+    private final char[] amountBuffer = new char[32];
+    private final char[] amountChars = "123.45".toCharArray();
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        listOfCashCards = objectMapper.getTypeFactory().constructCollectionType(List.class, CashCard.class);
+        cashCard = new CashCard(99L, Money.parse("123.45"), "sarah1");
+        // The default page size of GET /cashcards
+        page = new ArrayList<>();
+        for (long id = 0; id < 20; id++) {
+            page.add(new CashCard(id, Money.ofMinorUnits(id * 100 + 25), "sarah1"));
+        }
+        cashCardJson = objectMapper.writeValueAsBytes(cashCard);
+        pageJson = objectMapper.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public byte[] serializeCashCard() throws IOException {
+        return objectMapper.writeValueAsBytes(cashCard);
+    }
+
+    @Benchmark
+    public CashCard deserializeCashCard() throws IOException {
+        return objectMapper.readValue(cashCardJson, CashCard.class);
+    }
+
+    @Benchmark
+    public int formatAmount() {
+        return cashCard.amount().format(amountBuffer);
+    }
+
+    @Benchmark
+    public Money parseAmount() {
+        return Money.parse(amountChars, 0, amountChars.length);
+    }
+
+    @Benchmark
+    public byte[] serializePage() throws IOException {
+        return objectMapper.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public List<CashCard> deserializePage() throws IOException {
+        return objectMapper.readValue(pageJson, listOfCashCards);
+    }
+}
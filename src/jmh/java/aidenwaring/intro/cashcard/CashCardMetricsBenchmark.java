@@ -0,0 +1,76 @@
+package aidenwaring.intro.cashcard;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/*
+What the instrumentation costs: the same requests with all metrics on (as in production) and all off.
+GET /cashcards/99 is the cheapest request we have (served from the card and credential caches),
+so it's where the overhead is largest relative to the work; GET /cashcards adds a query and a bigger body.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CashCardMetricsBenchmark {
+    @Param({"true", "false"})
+    boolean metrics;
+
+    private final RunningApplication application = new RunningApplication();
+    private HttpClient httpClient;
+    private HttpRequest getCashCard;
+    private HttpRequest getCashCards;
+
+    @Setup
+    public void setUp() {
+        application.start("cashcard.metrics.enabled=" + metrics, "management.metrics.enable.all=" + metrics);
+        httpClient = HttpClient.newHttpClient();
+        String credentials = Base64.getEncoder().encodeToString("sarah1:abc123".getBytes(StandardCharsets.UTF_8));
+        getCashCard = HttpRequest.newBuilder(URI.create("http://localhost:" + application.port + "/cashcards/99"))
+                .header("Authorization", "Basic " + credentials)
+                .GET()
+                .build();
+        getCashCards = HttpRequest.newBuilder(URI.create("http://localhost:" + application.port + "/cashcards"))
+                .header("Authorization", "Basic " + credentials)
+                .GET()
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        application.stop();
+    }
+
+    @Benchmark
+    public byte[] getCashCardById() throws IOException, InterruptedException {
+        return send(getCashCard);
+    }
+
+    @Benchmark
+    public byte[] getCashCards() throws IOException, InterruptedException {
+        return send(getCashCards);
+    }
+
+    private byte[] send(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(request.uri() + " returned " + response.statusCode());
+        }
+        return response.body();
+    }
+}
@@ -0,0 +1,70 @@
+package aidenwaring.intro.cashcard;
+
+import aidenwaring.intro.cashcard.record.CashCard;
+import aidenwaring.intro.cashcard.record.CashCardSummary;
+import aidenwaring.intro.cashcard.repository.CashCardRepository;
+import aidenwaring.intro.cashcard.repository.CashCardSummaryRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+The derived queries of CashCardRepository against H2, called directly (no HTTP, security or cache in the way).
+
+otherCards puts that many cards of another owner in the same table: with the owner-leading indexes
+(see schema.sql and CashCardQueryPlanTest) none of these should get slower with it, even at 10 million rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CashCardRepositoryBenchmark {
+    @Param({"1000", "100000"})
+    int cardsPerOwner;
+
+    @Param({"0", "10000000"})
+    int otherCards;
+
+    private CashCardRepository cashCardRepository;
+    private CashCardSummaryRepository summaryRepository;
+    private PageRequest firstPage;
+
+    @Setup
+    public void setUp(RunningApplication application) {
+        application.addCashCards("sarah1", cardsPerOwner);
+        application.addCashCards("kumar2", otherCards);
+        cashCardRepository = application.bean(CashCardRepository.class);
+        summaryRepository = application.bean(CashCardSummaryRepository.class);
+        firstPage = PageRequest.of(0, 20, Sort.by(Sort.Direction.ASC, "amount"));
+    }
+
+    @Benchmark
+    public CashCard findByIdAndOwner() {
+        return cashCardRepository.findByIdAndOwner(99L, "sarah1");
+    }
+
+    @Benchmark
+    public boolean existsByIdAndOwner() {
+        return cashCardRepository.existsByIdAndOwner(99L, "sarah1");
+    }
+
+    @Benchmark
+    public Slice<CashCard> findByOwner() {
+        return cashCardRepository.findByOwner("sarah1", firstPage);
+    }
+
+    // Should not grow with cardsPerOwner, which is what makes it the total behind ?withTotal=true
+    @Benchmark
+    public CashCardSummary findSummaryByOwner() {
+        return summaryRepository.findByOwner("sarah1");
+    }
+}
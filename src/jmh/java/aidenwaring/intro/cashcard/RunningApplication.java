@@ -0,0 +1,59 @@
+package aidenwaring.intro.cashcard;
+
+import aidenwaring.intro.cashcard.service.CashCardSummaryService;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/*
+The whole application, started once per benchmark trial on a random port with the test schema and data in H2.
+Benchmarks take it as a @State parameter to reach beans (like the repository) or the HTTP port,
+or create and start() one themselves when they need to override some properties.
+ */
+@State(Scope.Benchmark)
+public class RunningApplication {
+    ConfigurableApplicationContext context;
+    int port;
+
+    @Setup(Level.Trial)
+    public void start() {
+        start(new String[0]);
+    }
+
+    void start(String... properties) {
+        context = new SpringApplicationBuilder(CashCardApplication.class)
+                .properties("server.port=0", "logging.level.root=WARN")
+                // Benchmarks are one owner sending as many requests as possible, which is exactly what the limits stop
+                .properties("cashcard.ratelimit.read.per-second=1000000", "cashcard.ratelimit.write.per-second=1000000",
+                        "cashcard.ratelimit.bulk.per-second=1000000", "cashcard.admission.max-concurrent-requests=10000")
+                .properties(properties)
+                .run();
+        port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    // Gives an owner more cards than data.sql does, using ids that can't collide with generated ones or earlier calls
+    void addCashCards(String owner, int count) {
+        JdbcTemplate jdbcTemplate = bean(JdbcTemplate.class);
+        long lastId = jdbcTemplate.queryForObject("SELECT GREATEST(COALESCE(MAX(id), 0), 1000000) FROM cash_card", Long.class);
+        jdbcTemplate.update(
+                "INSERT INTO cash_card (id, amount, owner) SELECT ? + X, MOD(X, 50000) + 25, ? FROM SYSTEM_RANGE(1, ?)",
+                lastId, owner, count);
+        // Those rows bypassed the application, so bring the owners' summaries back in line
+        bean(CashCardSummaryService.class).verifyAll();
+    }
+}
@@ -0,0 +1,184 @@
+package aidenwaring.intro.cashcard;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+Cold start of the whole application in its own process, from launch until it's listening
+and until it has answered its first GET /cashcards/99, for each of the builds from the aot profile in build.gradle:
+- jvm: the plain jar, with classpath scanning and reflection at startup
+- jvm-cds: the same jar using the AOT-generated bean definitions and the class-data-sharing archive
+- native: the GraalVM native executable
+
+Every invocation is a fresh process, so there's no JIT warm-up to speak of: that's the point.
+Run with ./gradlew -Paot jmh, which builds all three first.
+main() is the CDS training run used by ./gradlew -Paot cdsArchive.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 10)
+public class StartupBenchmark {
+    private static final Path BUILD_DIR = Path.of(System.getProperty("cashcard.startup.build-dir", "build"));
+    private static final Path JAR = BUILD_DIR.resolve("cds/cashcard.jar");
+    private static final Path ARCHIVE = BUILD_DIR.resolve("cds/cashcard.jsa");
+    private static final Path NATIVE_EXECUTABLE = BUILD_DIR.resolve("native/nativeCompile/cashcard");
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    @Param({"jvm", "jvm-cds", "native"})
+    String build;
+
+    private int port;
+    private Process process;
+
+    @Setup(Level.Invocation)
+    public void choosePort() throws IOException {
+        port = freePort();
+    }
+
+    @TearDown(Level.Invocation)
+    public void stopApplication() throws InterruptedException {
+        stop(process);
+    }
+
+    @Benchmark
+    public void untilListening() throws IOException, InterruptedException {
+        process = start(command(build), port);
+        awaitListening(process, port);
+    }
+
+    @Benchmark
+    public int untilFirstResponse() throws IOException, InterruptedException {
+        process = start(command(build), port);
+        return awaitFirstResponse(process, port);
+    }
+
+    // The JVM records every class loaded by the startup and the first request, and writes the archive when it exits
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path jar = Path.of(args[0]);
+        Path archive = Path.of(args[1]);
+        Files.deleteIfExists(archive);
+        int port = freePort();
+        Process process = start(List.of(java(), "-XX:ArchiveClassesAtExit=" + archive, "-Dspring.aot.enabled=true",
+                "-jar", jar.toString()), port);
+        awaitFirstResponse(process, port);
+        stop(process);
+        if (!Files.exists(archive)) {
+            throw new IllegalStateException("The training run exited without writing " + archive);
+        }
+    }
+
+    private static List<String> command(String build) {
+        return switch (build) {
+            case "jvm" -> List.of(java(), "-jar", JAR.toString());
+            // -Xshare:on fails rather than quietly starting without the archive (e.g. when it was recorded on another JDK)
+            case "jvm-cds" -> List.of(java(), "-Xshare:on", "-XX:SharedArchiveFile=" + ARCHIVE,
+                    "-Dspring.aot.enabled=true", "-jar", JAR.toString());
+            case "native" -> List.of(NATIVE_EXECUTABLE.toString());
+            default -> throw new IllegalArgumentException("Unknown build: " + build);
+        };
+    }
+
+    // Same test schema and data as the other benchmarks, in an in-memory H2
+    private static Process start(List<String> command, int port) throws IOException {
+        Path resources = Path.of("src/test/resources").toAbsolutePath();
+        List<String> arguments = new ArrayList<>(command);
+        arguments.addAll(List.of(
+                "--server.port=" + port,
+                "--logging.level.root=WARN",
+                "--spring.datasource.url=jdbc:h2:mem:cashcard",
+                "--spring.sql.init.mode=always",
+                "--spring.sql.init.schema-locations=file:" + resources.resolve("schema.sql"),
+                "--spring.sql.init.data-locations=file:" + resources.resolve("data.sql")));
+        return new ProcessBuilder(arguments).inheritIO().start();
+    }
+
+    private static void awaitListening(Process process, int port) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        while (true) {
+            try (Socket ignored = new Socket("localhost", port)) {
+                return;
+            } catch (IOException e) {
+                waitBeforeRetrying(process, deadline, e);
+            }
+        }
+    }
+
+    private static int awaitFirstResponse(Process process, int port) throws IOException, InterruptedException {
+        HttpClient httpClient = HttpClient.newHttpClient();
+        String credentials = Base64.getEncoder().encodeToString("sarah1:abc123".getBytes(StandardCharsets.UTF_8));
+        HttpRequest getCashCard = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/cashcards/99"))
+                .header("Authorization", "Basic " + credentials)
+                .GET()
+                .build();
+        long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        while (true) {
+            try {
+                HttpResponse<byte[]> response = httpClient.send(getCashCard, HttpResponse.BodyHandlers.ofByteArray());
+                if (response.statusCode() != 200) {
+                    throw new IllegalStateException("GET /cashcards/99 returned " + response.statusCode());
+                }
+                return response.body().length;
+            } catch (IOException e) {
+                waitBeforeRetrying(process, deadline, e);
+            }
+        }
+    }
+
+    private static void waitBeforeRetrying(Process process, long deadline, IOException failure) throws InterruptedException {
+        if (!process.isAlive()) {
+            throw new IllegalStateException("The application exited with " + process.exitValue() + " before it was ready");
+        }
+        if (System.nanoTime() > deadline) {
+            throw new IllegalStateException("The application wasn't ready after 60 seconds", failure);
+        }
+        Thread.sleep(5);
+    }
+
+    // Stopped gracefully, so a CDS training run gets to write its archive
+    private static void stop(Process process) throws InterruptedException {
+        if (process == null) {
+            return;
+        }
+        process.destroy();
+        if (!process.waitFor(30, TimeUnit.SECONDS)) {
+            process.destroyForcibly().waitFor();
+        }
+    }
+
+    private static String java() {
+        return Path.of(System.getProperty("java.home"), "bin", "java").toString();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package aidenwaring.intro.cashcard;
+
+import aidenwaring.intro.cashcard.ratelimit.EndpointClass;
+import aidenwaring.intro.cashcard.ratelimit.OwnerRateLimiter;
+import aidenwaring.intro.cashcard.ratelimit.TokenBucket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+The rate limiter sits in front of every request, so it must not become a point of contention itself.
+hotBucket has every thread hammering the same owner's bucket (the worst case for the compareAndSet loop);
+manyOwners spreads the threads over many owners, which is what production traffic looks like.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(8)
+public class TokenBucketBenchmark {
+    private static final int OWNERS = 10_000;
+
+    private TokenBucket bucket;
+    private OwnerRateLimiter rateLimiter;
+    private String[] owners;
+
+    @Setup
+    public void setUp() {
+        // Never runs out, so every call takes the full path
+        bucket = new TokenBucket(1e9, 1_000_000_000, System.nanoTime());
+        OwnerRateLimiter.Limit limit = new OwnerRateLimiter.Limit(1e9, 1_000_000);
+        rateLimiter = new OwnerRateLimiter(Map.of(EndpointClass.READ, limit, EndpointClass.WRITE, limit,
+                EndpointClass.BULK, limit), OWNERS);
+        owners = new String[OWNERS];
+        for (int i = 0; i < OWNERS; i++) {
+            owners[i] = "owner-" + i;
+        }
+    }
+
+    @Benchmark
+    public long hotBucket() {
+        return bucket.tryAcquire(System.nanoTime());
+    }
+
+    @Benchmark
+    public long manyOwners() {
+        return rateLimiter.tryAcquire(owners[ThreadLocalRandom.current().nextInt(OWNERS)], EndpointClass.READ);
+    }
+}
@@ -0,0 +1,81 @@
+package aidenwaring.intro.cashcard;
+
+import aidenwaring.intro.cashcard.repository.CashCardUserRepository;
+import aidenwaring.intro.cashcard.security.JdbcUserIndex;
+import aidenwaring.intro.cashcard.security.VerifiedCredentialCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+JdbcUserIndex with a million card owners: the cost of one lookup (what every uncached HTTP Basic login pays
+before the BCrypt check), and, printed once per trial, roughly how much heap the index keeps per user.
+The users are generated with the same precomputed hash, like real rows they're never hashed while loading.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UserIndexBenchmark {
+    private static final String HASH = "$2a$10$92768/GbWJRjPwb1TkUYI.5G9sjwtNqsZ.pqXHyHSLV6L7JUxZRua";
+
+    @Param({"1000000"})
+    int users;
+
+    private EmbeddedDatabase database;
+    private JdbcUserIndex index;
+
+    @Setup(Level.Trial)
+    public void load() {
+        database = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .addScript("schema.sql")
+                .build();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.update("INSERT INTO cash_card_user (username, password, roles) "
+                + "SELECT 'owner-' || X, ?, 'CARD-OWNER' FROM SYSTEM_RANGE(1, ?)", HASH, users);
+
+        index = new JdbcUserIndex(new CashCardUserRepository(jdbcTemplate, 1000),
+                new VerifiedCredentialCache(1, Duration.ofMinutes(1)), Duration.ofMinutes(1));
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long before = usedHeapAfterGc(memory);
+        index.loadUserByUsername("owner-1");
+        long after = usedHeapAfterGc(memory);
+        System.out.printf("%nJdbcUserIndex: %d users, about %d bytes per user%n", users, (after - before) / users);
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown() {
+        database.shutdown();
+    }
+
+    @Benchmark
+    public UserDetails loadUserByUsername() {
+        return index.loadUserByUsername("owner-" + ThreadLocalRandom.current().nextInt(1, users + 1));
+    }
+
+    // The database is in the same heap, so only what the index retains is counted as long as H2 doesn't grow meanwhile
+    private static long usedHeapAfterGc(MemoryMXBean memory) {
+        System.gc();
+        System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,281 @@
+package aidenwaring.intro.cashcard;
+
+import aidenwaring.intro.cashcard.service.CashCardSummaryService;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+The whole application under a realistic mix of requests, run with ./gradlew loadTest (see build.gradle for the settings).
+
+It starts the application on H2, generates owners and cards, then sends requests at a fixed arrival rate
+whether or not earlier ones have been answered (an open-loop load). Each request's latency is measured from when it
+was due to be sent, not from when it actually went out: a client that waits for each answer before sending the next
+request stops sending while the server stalls, and so never measures the stall it's waiting through
+("coordinated omission"). Requests due during the warm-up aren't counted.
+
+With -Ploadtest.connections=N the load is closed-loop instead: N clients, each on its own connection, sending their
+next request as soon as the last one is answered. That holds N connections open and busy at all times, which is what
+tells request-per-platform-thread and request-per-virtual-thread (-Ploadtest.virtual-threads=true) apart at 1k or 10k
+connections. Its latencies are measured from when each request was actually sent, so they leave out the time clients
+spent waiting on a stalled server: compare modes by throughput, and by latency only at the same N.
+
+The run fails if any operation's p99 or the throughput regressed past the tolerances compared with the stored baseline,
+or if too many requests failed. It also fails without a baseline to compare with, so a lost or unmeasured baseline
+can't quietly turn the gate off: record one (on the machine the gate runs on) with -Ploadtest.update-baseline=true.
+ */
+public class LoadTest {
+    // The same password as sarah1 in data.sql, so the generated owners can share its BCrypt hash
+    private static final String PASSWORD = "abc123";
+    private static final String PASSWORD_HASH = "$2a$10$92768/GbWJRjPwb1TkUYI.5G9sjwtNqsZ.pqXHyHSLV6L7JUxZRua";
+    // Generated cards get ids well clear of data.sql's and of the ones the application generates during the run
+    private static final long FIRST_CARD_ID = 1_000_000;
+    private static final int PAGE_SIZE = 20;
+
+    private final int owners = Integer.getInteger("loadtest.owners", 1000);
+    private final int cardsPerOwner = Integer.getInteger("loadtest.cards-per-owner", 100);
+    private final double ratePerSecond = Double.parseDouble(System.getProperty("loadtest.rate", "500"));
+    private final Duration warmup = Duration.parse(System.getProperty("loadtest.warmup", "PT30S"));
+    private final Duration duration = Duration.parse(System.getProperty("loadtest.duration", "PT60S"));
+    private final String mix = System.getProperty("loadtest.mix", "list:20,get:50,create:10,update:15,delete:5");
+    // 0 for the open-loop load at loadtest.rate
+    private final int connections = Integer.getInteger("loadtest.connections", 0);
+    private final boolean virtualThreads = Boolean.getBoolean("loadtest.virtual-threads");
+
+    // HTTP/1.1 has one request at a time per connection, so the client opens a connection per request in flight
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final LoadTestReport report = new LoadTestReport();
+    // Cards created during the run, which is where DELETE takes its cards from
+    private final Queue<CreatedCard> createdCards = new ConcurrentLinkedQueue<>();
+    private int port;
+
+    private record CreatedCard(URI location, String owner) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        new LoadTest().run();
+    }
+
+    void run() throws Exception {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(CashCardApplication.class)
+                .properties("server.port=0", "logging.level.root=WARN")
+                // Limits meant for real clients would turn most of the load into 429s and 503s
+                .properties("cashcard.ratelimit.read.per-second=1000000", "cashcard.ratelimit.write.per-second=1000000",
+                        "cashcard.admission.max-concurrent-requests=" + Math.max(10_000, connections))
+                // Tomcat accepts 8192 connections by default, and leaves the rest waiting in the backlog
+                .properties("server.tomcat.max-connections=" + Math.max(8192, connections),
+                        "cashcard.threads.virtual.enabled=" + virtualThreads)
+                .run();
+        try {
+            port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+            generateData(context);
+            String load = connections > 0 ? connections + " connections" : String.format("%.0f requests per second", ratePerSecond);
+            System.out.printf("Load test: %d owners with %d cards each, %s (%s) on %s threads for %s after %s warm-up%n",
+                    owners, cardsPerOwner, load, mix, virtualThreads ? "virtual" : "platform", duration, warmup);
+            if (connections > 0) {
+                sendOverConnections(LoadTestOperation.parseMix(mix));
+            } else {
+                sendRequests(LoadTestOperation.parseMix(mix));
+            }
+        } finally {
+            context.close();
+        }
+        checkAgainstBaseline();
+    }
+
+    private void generateData(ConfigurableApplicationContext context) {
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        jdbcTemplate.update("INSERT INTO cash_card_user (username, password, roles) "
+                + "SELECT 'owner-' || X, ?, 'CARD-OWNER' FROM SYSTEM_RANGE(1, ?)", PASSWORD_HASH, owners);
+        jdbcTemplate.update("INSERT INTO cash_card (id, amount, owner) "
+                        + "SELECT ? + X, MOD(X * 7919, 50000) + 25, 'owner-' || ((X - 1) / ? + 1) FROM SYSTEM_RANGE(1, ?)",
+                FIRST_CARD_ID, cardsPerOwner, (long) owners * cardsPerOwner);
+        // Those rows bypassed the application, so bring the owners' summaries in line
+        context.getBean(CashCardSummaryService.class).verifyAll();
+    }
+
+    /*
+        The i-th request is due at start + i * period, and the dispatcher only sleeps until then, it never waits for answers.
+        Throughput counts the measured requests that were answered before the end of the measured period,
+        so a server that falls behind shows up there as well as in the latencies.
+     */
+    private void sendRequests(Map<LoadTestOperation, Double> weights) {
+        long period = Math.round(1e9 / ratePerSecond);
+        long start = System.nanoTime();
+        long measuredFrom = start + warmup.toNanos();
+        long measuredUntil = measuredFrom + duration.toNanos();
+        List<CompletableFuture<?>> inFlight = new ArrayList<>();
+
+        for (long i = 0; ; i++) {
+            long due = start + i * period;
+            if (due >= measuredUntil) {
+                break;
+            }
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            boolean measured = due >= measuredFrom;
+            inFlight.add(send(pick(weights)).thenAccept(outcome -> {
+                long answeredAt = System.nanoTime();
+                if (measured) {
+                    report.record(outcome.operation(), answeredAt - due, outcome.succeeded(), answeredAt <= measuredUntil);
+                }
+            }));
+            // Don't hold on to the futures of requests that have been answered
+            if (inFlight.size() >= 10_000) {
+                inFlight.removeIf(CompletableFuture::isDone);
+            }
+        }
+        CompletableFuture.allOf(inFlight.toArray(CompletableFuture[]::new)).join();
+        report.finish(duration);
+    }
+
+    /*
+        Each client sends its next request from the answer to the last one, until the measured period is over.
+        Throughput counts the same way as in sendRequests.
+     */
+    private void sendOverConnections(Map<LoadTestOperation, Double> weights) {
+        long start = System.nanoTime();
+        long measuredFrom = start + warmup.toNanos();
+        long measuredUntil = measuredFrom + duration.toNanos();
+        List<CompletableFuture<Void>> clients = new ArrayList<>();
+        for (int i = 0; i < connections; i++) {
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            keepSending(weights, measuredFrom, measuredUntil, done);
+            clients.add(done);
+        }
+        CompletableFuture.allOf(clients.toArray(CompletableFuture[]::new)).join();
+        report.finish(duration);
+    }
+
+    private void keepSending(Map<LoadTestOperation, Double> weights, long measuredFrom, long measuredUntil,
+                             CompletableFuture<Void> done) {
+        long sentAt = System.nanoTime();
+        if (sentAt >= measuredUntil) {
+            done.complete(null);
+            return;
+        }
+        send(pick(weights)).thenAccept(outcome -> {
+            long answeredAt = System.nanoTime();
+            if (sentAt >= measuredFrom) {
+                report.record(outcome.operation(), answeredAt - sentAt, outcome.succeeded(), answeredAt <= measuredUntil);
+            }
+            keepSending(weights, measuredFrom, measuredUntil, done);
+        });
+    }
+
+    private static LoadTestOperation pick(Map<LoadTestOperation, Double> weights) {
+        double choice = ThreadLocalRandom.current().nextDouble();
+        LoadTestOperation picked = null;
+        for (Map.Entry<LoadTestOperation, Double> weight : weights.entrySet()) {
+            picked = weight.getKey();
+            choice -= weight.getValue();
+            if (choice < 0) {
+                break;
+            }
+        }
+        return picked;
+    }
+
+    private record Outcome(LoadTestOperation operation, boolean succeeded) {
+    }
+
+    private CompletableFuture<Outcome> send(LoadTestOperation operation) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long card = random.nextLong(owners * (long) cardsPerOwner);
+        String owner = "owner-" + (card / cardsPerOwner + 1);
+        String amount = "{\"amount\": " + random.nextInt(1, 100000) / 100.0 + "}";
+
+        HttpRequest.Builder request;
+        switch (operation) {
+            case LIST -> request = request(owner, "/cashcards?page=" + random.nextInt(Math.max(1, cardsPerOwner / PAGE_SIZE))
+                    + "&size=" + PAGE_SIZE).GET();
+            case GET -> request = request(owner, "/cashcards/" + (FIRST_CARD_ID + card + 1)).GET();
+            case UPDATE -> request = request(owner, "/cashcards/" + (FIRST_CARD_ID + card + 1)).PUT(json(amount));
+            case DELETE -> {
+                CreatedCard created = createdCards.poll();
+                if (created == null) {
+                    // Nothing to delete yet, so keep the number of requests (and cards) as it should be
+                    return send(LoadTestOperation.CREATE);
+                }
+                request = HttpRequest.newBuilder(created.location()).header("Authorization", basicAuth(created.owner())).DELETE();
+            }
+            default -> request = request(owner, "/cashcards").POST(json(amount));
+        }
+        return client.sendAsync(request.timeout(Duration.ofSeconds(10)).build(), HttpResponse.BodyHandlers.discarding())
+                .thenApply(response -> {
+                    boolean succeeded = response.statusCode() == operation.expectedStatus;
+                    if (operation == LoadTestOperation.CREATE && succeeded) {
+                        response.headers().firstValue("Location")
+                                .ifPresent(location -> createdCards.add(new CreatedCard(URI.create(location), owner)));
+                    }
+                    return new Outcome(operation, succeeded);
+                })
+                // Timeouts and refused connections are failed requests like any other
+                .exceptionally(failure -> new Outcome(operation, false));
+    }
+
+    private HttpRequest.Builder request(String owner, String path) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .header("Authorization", basicAuth(owner));
+    }
+
+    private static HttpRequest.BodyPublisher json(String body) {
+        return HttpRequest.BodyPublishers.ofString(body);
+    }
+
+    private static String basicAuth(String owner) {
+        return "Basic " + Base64.getEncoder().encodeToString((owner + ":" + PASSWORD).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void checkAgainstBaseline() throws Exception {
+        Path results = Path.of(System.getProperty("loadtest.results-dir", "build/loadtest"));
+        Path baseline = Path.of(System.getProperty("loadtest.baseline", "src/loadTest/baseline.properties"));
+        String settings = "owners=" + owners + ",cards-per-owner=" + cardsPerOwner + ",rate=" + ratePerSecond
+                + ",duration=" + duration + ",mix=" + mix + ",connections=" + connections + ",virtual-threads=" + virtualThreads;
+
+        report.write(System.out, results);
+        report.saveAsBaseline(results.resolve("results.properties"), settings);
+        if (Boolean.getBoolean("loadtest.update-baseline")) {
+            report.saveAsBaseline(baseline, settings);
+            System.out.println("Recorded a new baseline in " + baseline);
+            return;
+        }
+        if (!Files.exists(baseline)) {
+            throw new IllegalStateException("There is no baseline in " + baseline
+                    + " to compare with; record one with -Ploadtest.update-baseline=true");
+        }
+        List<String> regressions = report.regressionsFrom(baseline, settings,
+                Double.parseDouble(System.getProperty("loadtest.p99-tolerance", "0.20")),
+                Double.parseDouble(System.getProperty("loadtest.throughput-tolerance", "0.05")),
+                Double.parseDouble(System.getProperty("loadtest.max-error-rate", "0.001")));
+        if (!regressions.isEmpty()) {
+            throw new IllegalStateException("The load test regressed against " + baseline + ":\n  "
+                    + String.join("\n  ", regressions));
+        }
+        System.out.println("No regressions against " + baseline);
+    }
+}
@@ -0,0 +1,40 @@
+package aidenwaring.intro.cashcard;
+
+import org.springframework.http.HttpStatus;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// The kinds of request the load test sends, and the status each one should get back
+enum LoadTestOperation {
+    LIST(HttpStatus.OK), // GET /cashcards?page=&size=20
+    GET(HttpStatus.OK), // GET /cashcards/{id}
+    CREATE(HttpStatus.CREATED), // POST /cashcards
+    UPDATE(HttpStatus.NO_CONTENT), // PUT /cashcards/{id}
+    DELETE(HttpStatus.NO_CONTENT); // DELETE /cashcards/{id}, of a card this run created
+
+    final int expectedStatus;
+
+    LoadTestOperation(HttpStatus expectedStatus) {
+        this.expectedStatus = expectedStatus.value();
+    }
+
+    // Parses a mix like "list:20,get:50,create:10,update:15,delete:5" into weights that add up to 1
+    static Map<LoadTestOperation, Double> parseMix(String mix) {
+        Map<LoadTestOperation, Double> weights = new LinkedHashMap<>();
+        double total = 0;
+        for (String entry : mix.split(",")) {
+            String[] operationAndWeight = entry.trim().split(":");
+            if (operationAndWeight.length != 2) {
+                throw new IllegalArgumentException("Not an operation:weight pair: " + entry);
+            }
+            double weight = Double.parseDouble(operationAndWeight[1]);
+            weights.merge(valueOf(operationAndWeight[0].trim().toUpperCase()), weight, Double::sum);
+            total += weight;
+        }
+        for (Map.Entry<LoadTestOperation, Double> weight : weights.entrySet()) {
+            weight.setValue(weight.getValue() / total);
+        }
+        return weights;
+    }
+}
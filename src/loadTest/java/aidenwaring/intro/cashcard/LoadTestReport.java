@@ -0,0 +1,157 @@
+package aidenwaring.intro.cashcard;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Latencies (in microseconds) and errors per operation, and the regression gate against a stored baseline.
+
+Latencies are recorded into HdrHistogram Recorders, which the HTTP client's threads can all write to without locking,
+with 3 significant digits from 1 microsecond up to a minute.
+ */
+class LoadTestReport {
+    private static final long HIGHEST_LATENCY_MICROS = Duration.ofMinutes(1).toNanos() / 1000;
+
+    private final Map<LoadTestOperation, Recorder> recorders = new EnumMap<>(LoadTestOperation.class);
+    private final Map<LoadTestOperation, LongAdder> errors = new EnumMap<>(LoadTestOperation.class);
+    private final Map<LoadTestOperation, Histogram> measured = new EnumMap<>(LoadTestOperation.class);
+    private final Map<LoadTestOperation, Long> measuredErrors = new EnumMap<>(LoadTestOperation.class);
+    private final LongAdder answeredInTime = new LongAdder();
+    private Duration measuredFor;
+
+    LoadTestReport() {
+        for (LoadTestOperation operation : LoadTestOperation.values()) {
+            recorders.put(operation, new Recorder(HIGHEST_LATENCY_MICROS, 3));
+            errors.put(operation, new LongAdder());
+        }
+    }
+
+    // Failed requests are counted as errors, not as latencies, and only successful ones answered in time count as throughput
+    void record(LoadTestOperation operation, long latencyNanos, boolean succeeded, boolean answeredInTime) {
+        if (succeeded) {
+            recorders.get(operation).recordValue(Math.min(latencyNanos / 1000, HIGHEST_LATENCY_MICROS));
+            if (answeredInTime) {
+                this.answeredInTime.increment();
+            }
+        } else {
+            errors.get(operation).increment();
+        }
+    }
+
+    // Takes everything recorded so far as the result of a run that measured for the given time
+    void finish(Duration measuredFor) {
+        this.measuredFor = measuredFor;
+        for (LoadTestOperation operation : LoadTestOperation.values()) {
+            measured.put(operation, recorders.get(operation).getIntervalHistogram());
+            measuredErrors.put(operation, errors.get(operation).sum());
+        }
+    }
+
+    // A table of the results, plus a .hgrm percentile distribution per operation for HdrHistogram's plotter
+    void write(PrintStream out, Path resultsDirectory) throws IOException {
+        Files.createDirectories(resultsDirectory);
+        out.printf("%n%-8s %10s %10s %10s %10s %10s %10s %8s%n",
+                "", "requests", "per sec", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "errors");
+        for (LoadTestOperation operation : LoadTestOperation.values()) {
+            Histogram histogram = measured.get(operation);
+            out.printf("%-8s %10d %10.1f %10.2f %10.2f %10.2f %10.2f %8d%n", operation,
+                    histogram.getTotalCount(), perSecond(histogram.getTotalCount()),
+                    histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(99) / 1000.0,
+                    histogram.getValueAtPercentile(99.9) / 1000.0, histogram.getMaxValue() / 1000.0,
+                    measuredErrors.get(operation));
+            try (PrintStream hgrm = new PrintStream(
+                    Files.newOutputStream(resultsDirectory.resolve(operation.name().toLowerCase() + ".hgrm")))) {
+                histogram.outputPercentileDistribution(hgrm, 1000.0);
+            }
+        }
+        out.printf("%-8s %10d %10.1f   (answered in time)%n%n", "ALL", totalRequests(), throughput());
+    }
+
+    // Successful requests per second answered within the measured time
+    double throughput() {
+        return perSecond(answeredInTime.sum());
+    }
+
+    // The measured run as a baseline for later runs, tagged with the settings it was measured with
+    void saveAsBaseline(Path baseline, String settings) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("settings", settings);
+        properties.setProperty("throughput-per-second", String.valueOf(throughput()));
+        for (LoadTestOperation operation : LoadTestOperation.values()) {
+            if (measured.get(operation).getTotalCount() > 0) {
+                properties.setProperty(operation.name().toLowerCase() + ".p99-micros",
+                        String.valueOf(measured.get(operation).getValueAtPercentile(99)));
+            }
+        }
+        Files.createDirectories(baseline.toAbsolutePath().getParent());
+        try (Writer writer = Files.newBufferedWriter(baseline)) {
+            properties.store(writer, "Load test baseline, re-record with ./gradlew loadTest -Ploadtest.update-baseline=true");
+        }
+    }
+
+    /*
+        Returns what regressed compared with the baseline (nothing means the gate passes):
+        a p99 more than p99Tolerance above the baseline's, throughput more than throughputTolerance below it,
+        or more than maxErrorRate of the requests failing.
+     */
+    List<String> regressionsFrom(Path baseline, String settings, double p99Tolerance, double throughputTolerance,
+                                 double maxErrorRate) throws IOException {
+        Properties expected = new Properties();
+        try (Reader reader = Files.newBufferedReader(baseline)) {
+            expected.load(reader);
+        }
+        List<String> regressions = new ArrayList<>();
+        if (!settings.equals(expected.getProperty("settings"))) {
+            regressions.add("the baseline was recorded with different settings (" + expected.getProperty("settings")
+                    + "), so it can't be compared; re-record it with -Ploadtest.update-baseline=true");
+            return regressions;
+        }
+
+        if (expected.getProperty("throughput-per-second") == null) {
+            regressions.add("the baseline has no measurements yet; record them with -Ploadtest.update-baseline=true");
+            return regressions;
+        }
+        double expectedThroughput = Double.parseDouble(expected.getProperty("throughput-per-second"));
+        if (throughput() < expectedThroughput * (1 - throughputTolerance)) {
+            regressions.add(String.format("throughput %.1f/s is below the baseline's %.1f/s", throughput(), expectedThroughput));
+        }
+        for (LoadTestOperation operation : LoadTestOperation.values()) {
+            String expectedP99 = expected.getProperty(operation.name().toLowerCase() + ".p99-micros");
+            Histogram histogram = measured.get(operation);
+            if (expectedP99 != null && histogram.getTotalCount() > 0) {
+                long p99 = histogram.getValueAtPercentile(99);
+                if (p99 > Long.parseLong(expectedP99) * (1 + p99Tolerance)) {
+                    regressions.add(String.format("%s p99 %.2f ms is above the baseline's %.2f ms",
+                            operation, p99 / 1000.0, Long.parseLong(expectedP99) / 1000.0));
+                }
+            }
+        }
+        long failed = measuredErrors.values().stream().mapToLong(Long::longValue).sum();
+        if (failed > (totalRequests() + failed) * maxErrorRate) {
+            regressions.add(failed + " requests failed");
+        }
+        return regressions;
+    }
+
+    private long totalRequests() {
+        return measured.values().stream().mapToLong(Histogram::getTotalCount).sum();
+    }
+
+    private double perSecond(long requests) {
+        return requests / (measuredFor.toNanos() / 1e9);
+    }
+}
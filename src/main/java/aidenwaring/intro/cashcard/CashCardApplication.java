@@ -2,8 +2,12 @@ package aidenwaring.intro.cashcard;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling // for the periodic check of the card summaries
+@ImportRuntimeHints(CashCardRuntimeHints.class) // only read by Spring AOT, for the native image
 public class CashCardApplication {
 
 	public static void main(String[] args) {
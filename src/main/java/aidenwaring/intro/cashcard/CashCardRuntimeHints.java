@@ -0,0 +1,47 @@
+package aidenwaring.intro.cashcard;
+
+import aidenwaring.intro.cashcard.record.CashCard;
+import aidenwaring.intro.cashcard.record.CashCardBatchResult;
+import aidenwaring.intro.cashcard.record.CashCardEvent;
+import aidenwaring.intro.cashcard.record.CashCardSummary;
+import aidenwaring.intro.cashcard.record.Money;
+import aidenwaring.intro.cashcard.record.MoneyJsonDeserializer;
+import aidenwaring.intro.cashcard.record.MoneyJsonSerializer;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.ExecutableMode;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+
+/*
+What a GraalVM native image can't work out on its own by following calls from main().
+
+Spring AOT already registers the beans, the repository proxy and the handler methods' @RequestBody/@ResponseBody types,
+but some of our reflection only happens at runtime:
+- Jackson builds CashCard, CashCardSummary and CashCardBatchResult reflectively, and instantiates the Money
+  (de)serializers named in @JsonSerialize/@JsonDeserialize. The batch and export endpoints read and write
+  those types through a MappingIterator/JsonGenerator, so nothing in their signatures tells AOT about them.
+  The same goes for CashCardEvent, which SseEmitter and FileEventSink write.
+- Spring Data JDBC reads and writes CashCard's components (id, amount, owner, version) and calls its
+  @PersistenceCreator constructor when mapping rows from the derived and @Query methods of CashCardRepository.
+- VirtualThreadConfig looks up Executors.newVirtualThreadPerTaskExecutor() by name.
+ */
+public class CashCardRuntimeHints implements RuntimeHintsRegistrar {
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(),
+                CashCard.class, CashCardSummary.class, CashCardBatchResult.class, CashCardEvent.class, Money.class);
+        hints.reflection().registerType(CashCard.class,
+                MemberCategory.INVOKE_DECLARED_CONSTRUCTORS, MemberCategory.DECLARED_FIELDS,
+                MemberCategory.INVOKE_PUBLIC_METHODS);
+        hints.reflection().registerType(MoneyJsonSerializer.class, MemberCategory.INVOKE_DECLARED_CONSTRUCTORS);
+        hints.reflection().registerType(MoneyJsonDeserializer.class, MemberCategory.INVOKE_DECLARED_CONSTRUCTORS);
+        // Only there on Java 21+, so we can't refer to the Method itself
+        hints.reflection().registerType(Executors.class, type -> type
+                .withMethod("newVirtualThreadPerTaskExecutor", List.of(), ExecutableMode.INVOKE));
+    }
+}
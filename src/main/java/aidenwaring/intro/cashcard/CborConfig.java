@@ -0,0 +1,41 @@
+package aidenwaring.intro.cashcard;
+
+import aidenwaring.intro.cashcard.record.CashCard;
+import aidenwaring.intro.cashcard.record.CashCardCborDeserializer;
+import aidenwaring.intro.cashcard.record.CashCardCborSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/*
+CBOR (application/cbor) next to JSON, for service-to-service callers that would rather not pay for text:
+cards and pages of cards are smaller and cheaper to write and read. Content negotiation picks the format,
+so any endpoint that takes or returns a body (apart from the export and the change stream) speaks both:
+Accept: application/cbor for responses, Content-Type: application/cbor for requests.
+
+Spring MVC would add a CBOR converter on its own once jackson-dataformat-cbor is on the classpath;
+this one replaces it, so the ObjectMapper gets Spring Boot's Jackson settings (spring.jackson.*) like the JSON one does,
+and writes and reads CashCard with our own (de)serializer instead of Jackson's reflective one.
+CashCardCborBenchmark and CashCardCborHttpBenchmark compare it with JSON.
+ */
+@Configuration
+public class CborConfig {
+
+    @Bean
+    MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(cborObjectMapper(builder));
+    }
+
+    // Also used by the benchmarks, so they measure the same ObjectMapper
+    static ObjectMapper cborObjectMapper(Jackson2ObjectMapperBuilder builder) {
+        ObjectMapper objectMapper = builder.factory(new CBORFactory()).build();
+        objectMapper.registerModule(new SimpleModule("CashCardCbor")
+                .addSerializer(CashCard.class, new CashCardCborSerializer())
+                .addDeserializer(CashCard.class, new CashCardCborDeserializer()));
+        return objectMapper;
+    }
+}
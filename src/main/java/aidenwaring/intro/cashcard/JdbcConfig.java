@@ -0,0 +1,20 @@
+package aidenwaring.intro.cashcard;
+
+import aidenwaring.intro.cashcard.record.MoneyConverters;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.jdbc.repository.config.AbstractJdbcConfiguration;
+
+import java.util.List;
+
+/*
+Spring Boot configures Spring Data JDBC for us, unless we provide our own AbstractJdbcConfiguration.
+We only extend it to register converters for our own value types (like Money); everything else stays the default.
+ */
+@Configuration
+public class JdbcConfig extends AbstractJdbcConfiguration {
+
+    @Override
+    protected List<?> userConverters() {
+        return MoneyConverters.all();
+    }
+}
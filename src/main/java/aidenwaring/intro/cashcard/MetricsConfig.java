@@ -0,0 +1,79 @@
+package aidenwaring.intro.cashcard;
+
+import aidenwaring.intro.cashcard.metrics.QueryCountFilter;
+import aidenwaring.intro.cashcard.metrics.QueryCountingDataSource;
+import aidenwaring.intro.cashcard.metrics.TimedJsonHttpMessageConverter;
+import aidenwaring.intro.cashcard.metrics.TimedPasswordEncoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import javax.sql.DataSource;
+
+/*
+Our own instrumentation, on top of what Spring Boot already measures:
+
+- http.server.requests: every CashCardController handler, by method and uri (Spring MVC)
+- spring.data.repository.invocations: every CashCardRepository method (Spring Data)
+- spring.security.filterchains / spring.security.authentications: the security filter chain (Spring Security)
+- cashcard.repository: the methods of our JDBC repositories (@Timed)
+- cashcard.jdbc.statements: JDBC statements per request, to spot N+1 patterns
+- cashcard.security.password.checks: the BCrypt comparison itself
+- cashcard.json.read / cashcard.json.write: request and response body (de)serialization
+
+Everything is published on /actuator/prometheus. The histogram settings are in application.properties.
+cashcard.metrics.enabled=false turns off the instrumentation defined here (CashCardMetricsBenchmark compares both).
+ */
+@Configuration
+@ConditionalOnProperty(name = "cashcard.metrics.enabled", havingValue = "true")
+public class MetricsConfig {
+
+    /*
+        Wraps beans as they're created, so nothing that uses the DataSource or PasswordEncoder needs to know.
+        Only DataSources that hand out their own connections are wrapped, not ones that pass another's on
+        (like the replica routing's LazyConnectionDataSourceProxy), or statements would be counted twice.
+     */
+    @Bean
+    static BeanPostProcessor instrumentingBeanPostProcessor(ObjectProvider<MeterRegistry> meterRegistry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof DelegatingDataSource)) {
+                    return new QueryCountingDataSource(dataSource);
+                }
+                if (bean instanceof PasswordEncoder passwordEncoder && !(bean instanceof TimedPasswordEncoder)) {
+                    Timer checks = Timer.builder("cashcard.security.password.checks")
+                            .description("Time spent comparing a password with its stored hash")
+                            .register(meterRegistry.getObject());
+                    return new TimedPasswordEncoder(passwordEncoder, checks);
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    QueryCountFilter queryCountFilter(MeterRegistry meterRegistry) {
+        return new QueryCountFilter(meterRegistry);
+    }
+
+    // Replaces the converter Spring Boot would otherwise configure
+    @Bean
+    TimedJsonHttpMessageConverter timedJsonHttpMessageConverter(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        return new TimedJsonHttpMessageConverter(objectMapper, meterRegistry);
+    }
+
+    // Makes @Timed work on any bean, not just on controllers
+    @Bean
+    TimedAspect timedAspect(MeterRegistry meterRegistry) {
+        return new TimedAspect(meterRegistry);
+    }
+}
@@ -0,0 +1,56 @@
+package aidenwaring.intro.cashcard;
+
+import aidenwaring.intro.cashcard.routing.RecentWriters;
+import aidenwaring.intro.cashcard.routing.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/*
+Opt-in: send read-only transactions to a replica and everything else to the primary (see ReplicaRoutingDataSource).
+Turned on with cashcard.datasource.replica.enabled=true.
+
+The primary is still configured by spring.datasource.* (and its pool by spring.datasource.hikari.*),
+the replica's pool by cashcard.datasource.replica.*. Everything that injects a DataSource
+(Spring Data JDBC, JdbcTemplate, the transaction manager) gets the routing one.
+ */
+@Configuration
+@ConditionalOnProperty(name = "cashcard.datasource.replica.enabled", havingValue = "true")
+public class ReplicaRoutingConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    @ConfigurationProperties("cashcard.datasource.replica")
+    HikariDataSource replicaDataSource() {
+        return DataSourceBuilder.create().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    RecentWriters recentWriters(@Value("${cashcard.datasource.replica.sticky-for}") Duration stickyFor,
+                                @Value("${cashcard.datasource.replica.maximum-writers}") long maximumWriters) {
+        return new RecentWriters(maximumWriters, stickyFor);
+    }
+
+    @Bean
+    @Primary
+    DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+                          @Qualifier("replicaDataSource") DataSource replica, RecentWriters recentWriters) {
+        return new LazyConnectionDataSourceProxy(new ReplicaRoutingDataSource(primary, replica, recentWriters));
+    }
+}
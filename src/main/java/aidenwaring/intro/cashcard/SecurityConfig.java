@@ -1,16 +1,31 @@
 package aidenwaring.intro.cashcard;
 
+import aidenwaring.intro.cashcard.ratelimit.ConcurrencyLimitFilter;
+import aidenwaring.intro.cashcard.ratelimit.ConcurrencyLimiter;
+import aidenwaring.intro.cashcard.ratelimit.EndpointClass;
+import aidenwaring.intro.cashcard.ratelimit.OwnerRateLimiter;
+import aidenwaring.intro.cashcard.ratelimit.RateLimitFilter;
+import aidenwaring.intro.cashcard.repository.CashCardUserRepository;
+import aidenwaring.intro.cashcard.security.CachingAuthenticationProvider;
+import aidenwaring.intro.cashcard.security.JdbcUserIndex;
+import aidenwaring.intro.cashcard.security.VerifiedCredentialCache;
+import jakarta.servlet.DispatcherType;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
-import org.springframework.security.core.userdetails.User;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
-import org.springframework.security.provisioning.InMemoryUserDetailsManager;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.access.intercept.AuthorizationFilter;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
+
+import java.time.Duration;
+import java.util.Map;
 
 /*
 The @Configuration annotation tells Spring to use this class to configure Spring and Spring Boot itself.
@@ -24,11 +39,19 @@ public class SecurityConfig {
     All HTTP requests to cashcards/ endpoints are required to be authenticated
     using HTTP Basic Authentication security (username and password).
     Also, do not require CSRF security.
+
+    Before anything else, requests beyond the global concurrency limit are shed (503),
+    and once we know who's asking, owners over their rate limit are turned away (429).
      */
     @Bean
-    public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain filterChain(HttpSecurity http, ConcurrencyLimiter concurrencyLimiter,
+                                           OwnerRateLimiter ownerRateLimiter) throws Exception {
         http
+                .addFilterBefore(new ConcurrencyLimitFilter(concurrencyLimiter), BasicAuthenticationFilter.class)
+                .addFilterAfter(new RateLimitFilter(ownerRateLimiter), AuthorizationFilter.class)
                 .authorizeHttpRequests(request -> request
+                        // Streaming responses finish on an async dispatch of a request that was already authorized
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         .requestMatchers("/cashcards/**")
                         .hasRole("CARD-OWNER")) // enable RBAC
                 .csrf(csrf -> csrf.disable())
@@ -51,23 +74,55 @@ public class SecurityConfig {
     }
 
     @Bean
-    UserDetailsService testOnlyUsers(PasswordEncoder passwordEncoder) {
-        User.UserBuilder users = User.builder();
-        UserDetails sarah = users
-                .username("sarah1")
-                .password(passwordEncoder.encode("abc123"))
-                .roles("CARD-OWNER") // new role
-                .build();
-        UserDetails hankOwnsNoCards = users
-                .username("hank-owns-no-cards")
-                .password(passwordEncoder.encode("qrs456"))
-                .roles("NON-OWNER") // new role
-                .build();
-        UserDetails kumar = users
-                .username("kumar2")
-                .password(passwordEncoder.encode("xyz789"))
-                .roles("CARD-OWNER")
-                .build();
-        return new InMemoryUserDetailsManager(sarah, hankOwnsNoCards, kumar);
+    ConcurrencyLimiter concurrencyLimiter(@Value("${cashcard.admission.max-concurrent-requests}") int maxConcurrentRequests) {
+        return new ConcurrencyLimiter(maxConcurrentRequests);
+    }
+
+    @Bean
+    OwnerRateLimiter ownerRateLimiter(
+            @Value("${cashcard.ratelimit.read.per-second}") double readsPerSecond,
+            @Value("${cashcard.ratelimit.read.burst}") int readBurst,
+            @Value("${cashcard.ratelimit.write.per-second}") double writesPerSecond,
+            @Value("${cashcard.ratelimit.write.burst}") int writeBurst,
+            @Value("${cashcard.ratelimit.bulk.per-second}") double bulkPerSecond,
+            @Value("${cashcard.ratelimit.bulk.burst}") int bulkBurst,
+            @Value("${cashcard.ratelimit.maximum-owners}") long maximumOwners) {
+        return new OwnerRateLimiter(Map.of(
+                EndpointClass.READ, new OwnerRateLimiter.Limit(readsPerSecond, readBurst),
+                EndpointClass.WRITE, new OwnerRateLimiter.Limit(writesPerSecond, writeBurst),
+                EndpointClass.BULK, new OwnerRateLimiter.Limit(bulkPerSecond, bulkBurst)), maximumOwners);
+    }
+
+    @Bean
+    VerifiedCredentialCache verifiedCredentialCache(
+            @Value("${cashcard.security.credential-cache.maximum-size}") long maximumSize,
+            @Value("${cashcard.security.credential-cache.expire-after-write}") Duration expireAfterWrite) {
+        return new VerifiedCredentialCache(maximumSize, expireAfterWrite);
+    }
+
+    /*
+    The usual UserDetailsService + PasswordEncoder check, wrapped so that credentials which already
+    passed BCrypt are served from the VerifiedCredentialCache instead of being hashed again.
+    Spring Security picks this bean up as the one AuthenticationProvider for HTTP Basic.
+     */
+    @Bean
+    AuthenticationProvider cachingAuthenticationProvider(UserDetailsService userDetailsService,
+                                                         PasswordEncoder passwordEncoder,
+                                                         VerifiedCredentialCache verifiedCredentialCache) {
+        DaoAuthenticationProvider passwordCheck = new DaoAuthenticationProvider();
+        passwordCheck.setUserDetailsService(userDetailsService);
+        passwordCheck.setPasswordEncoder(passwordEncoder);
+        return new CachingAuthenticationProvider(passwordCheck, verifiedCredentialCache);
+    }
+
+    /*
+    The card owners come from cash_card_user, with their BCrypt hashes precomputed in the table,
+    so nothing is hashed at startup. See JdbcUserIndex for how they're held in memory and refreshed.
+    Any other UserDetailsService bean can take its place: the caching provider above only needs the interface.
+     */
+    @Bean
+    JdbcUserIndex cashCardUsers(CashCardUserRepository userRepository, VerifiedCredentialCache verifiedCredentialCache,
+                                @Value("${cashcard.users.refresh-overlap}") Duration refreshOverlap) {
+        return new JdbcUserIndex(userRepository, verifiedCredentialCache, refreshOverlap);
     }
 }
\ No newline at end of file
@@ -0,0 +1,76 @@
+package aidenwaring.intro.cashcard;
+
+import aidenwaring.intro.cashcard.repository.CashCardSummaryRepository;
+import aidenwaring.intro.cashcard.sharding.OwnerShardingDataSource;
+import aidenwaring.intro.cashcard.sharding.ShardRebalancer;
+import aidenwaring.intro.cashcard.sharding.ShardedIdGenerator;
+import aidenwaring.intro.cashcard.sharding.Shards;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+Opt-in: spread the cards over several databases by owner (see Shards). Turned on with cashcard.sharding.enabled=true.
+
+cashcard.sharding.shards lists one JDBC URL per shard, the first being the home shard that also holds cash_card_user.
+Every shard needs the schema (before the application starts); spring.sql.init.* only initializes the home shard.
+Everything that injects a DataSource gets the sharding one, which picks the shard per connection,
+so repositories and services work as they are. Can't be combined with cashcard.datasource.replica.enabled=true.
+ */
+@Configuration
+@ConditionalOnProperty(name = "cashcard.sharding.enabled", havingValue = "true")
+public class ShardingConfig {
+
+    @Bean
+    Shards shards(@Value("${cashcard.sharding.shards}") List<String> jdbcUrls,
+                  @Value("${cashcard.sharding.username}") String username,
+                  @Value("${cashcard.sharding.password}") String password,
+                  @Value("${cashcard.sharding.maximum-pool-size}") int maximumPoolSize) {
+        List<HikariDataSource> dataSources = new ArrayList<>(jdbcUrls.size());
+        for (String jdbcUrl : jdbcUrls) {
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setPoolName("shard-" + dataSources.size());
+            dataSource.setJdbcUrl(jdbcUrl);
+            dataSource.setUsername(username);
+            dataSource.setPassword(password);
+            dataSource.setMaximumPoolSize(maximumPoolSize);
+            dataSources.add(dataSource);
+        }
+        return new Shards(dataSources);
+    }
+
+    @Bean
+    @Primary
+    DataSource dataSource(Shards shards) {
+        return new OwnerShardingDataSource(shards);
+    }
+
+    @Bean
+    ShardedIdGenerator shardedIdGenerator(Shards shards, JdbcTemplate jdbcTemplate) {
+        ShardedIdGenerator idGenerator = new ShardedIdGenerator(shards, jdbcTemplate);
+        idGenerator.dropIdentityDefaults();
+        return idGenerator;
+    }
+
+    @Bean
+    ShardRebalancer shardRebalancer(Shards shards, JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                                    CashCardSummaryRepository summaryRepository) {
+        return new ShardRebalancer(shards, jdbcTemplate, transactionTemplate, summaryRepository);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "cashcard.sharding.rebalance-on-startup", havingValue = "true")
+    ApplicationRunner rebalanceOnStartup(ShardRebalancer rebalancer) {
+        return args -> rebalancer.rebalance();
+    }
+}
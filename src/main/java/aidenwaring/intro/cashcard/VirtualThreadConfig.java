@@ -0,0 +1,54 @@
+package aidenwaring.intro.cashcard;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+Opt-in: run every request on its own virtual thread instead of Tomcat's fixed pool of platform threads.
+Turned on with cashcard.threads.virtual.enabled=true, and needs a Java 21+ runtime.
+
+Our handlers spend most of their time blocked on JDBC. A blocked virtual thread gives its carrier thread back,
+so a slow database no longer ties up the whole request pool; the connection pool becomes the limit instead
+(see the spring.datasource.hikari.* settings in application.properties).
+
+We still compile for Java 17, so the virtual thread executor is looked up reflectively.
+ */
+@Configuration
+@ConditionalOnProperty(name = "cashcard.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("cashcard.threads.virtual.enabled=true needs Java 21 or later, but this is Java "
+                    + Runtime.version().feature(), e);
+        }
+    }
+
+    // Tomcat hands each accepted request to this executor instead of its own thread pool
+    @Bean
+    TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandler(ExecutorService virtualThreadExecutor) {
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreadExecutor);
+    }
+
+    // Streaming responses (e.g. GET /cashcards/export) are written on MVC's async executor, so use virtual threads there too
+    @Bean
+    WebMvcConfigurer virtualThreadAsyncSupport(ExecutorService virtualThreadExecutor) {
+        return new WebMvcConfigurer() {
+            @Override
+            public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+                configurer.setTaskExecutor(new TaskExecutorAdapter(virtualThreadExecutor));
+            }
+        };
+    }
+}
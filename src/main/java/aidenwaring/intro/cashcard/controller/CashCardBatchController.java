@@ -0,0 +1,69 @@
+package aidenwaring.intro.cashcard.controller;
+
+import aidenwaring.intro.cashcard.record.CashCard;
+import aidenwaring.intro.cashcard.record.CashCardBatchResult;
+import aidenwaring.intro.cashcard.service.CashCardBatchService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.Principal;
+import java.util.List;
+
+/*
+Bulk versions of POST, PUT and DELETE /cashcards.
+
+The body can either be a JSON array or NDJSON (one JSON value per line, Content-Type: application/x-ndjson).
+Jackson's MappingIterator reads both the same way, one item at a time, straight off the request stream.
+The response lists one result per item, in request order, with the status the single-item endpoint would have used.
+If an item can't be read, the batch stops there and its result (400, with the error) is the last one:
+everything listed before it has been committed, and nothing after it was looked at. A client retrying a POST
+should only resend the items from the failed one on, as resending the earlier ones would create them again.
+ */
+@RestController
+@RequestMapping("/cashcards/batch")
+public class CashCardBatchController {
+    CashCardBatchService batchService;
+    ObjectReader cashCardReader;
+    ObjectReader idReader;
+
+    public CashCardBatchController(CashCardBatchService batchService, ObjectMapper objectMapper) {
+        this.batchService = batchService;
+        this.cashCardReader = objectMapper.readerFor(CashCard.class);
+        this.idReader = objectMapper.readerFor(Long.class);
+    }
+
+    @PostMapping(consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<List<CashCardBatchResult>> createCashCards(InputStream body, Principal principal) throws IOException {
+        try (MappingIterator<CashCard> cashCards = cashCardReader.readValues(body)) {
+            return ResponseEntity.ok(batchService.createAll(principal.getName(), cashCards));
+        }
+    }
+
+    @PutMapping(consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<List<CashCardBatchResult>> putCashCards(InputStream body, Principal principal) throws IOException {
+        try (MappingIterator<CashCard> cashCards = cashCardReader.readValues(body)) {
+            return ResponseEntity.ok(batchService.updateAll(principal.getName(), cashCards));
+        }
+    }
+
+    // The body is a list of card ids, e.g. [99, 100] or one id per line
+    @DeleteMapping(consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<List<CashCardBatchResult>> deleteCashCards(InputStream body, Principal principal) throws IOException {
+        try (MappingIterator<Long> ids = idReader.readValues(body)) {
+            return ResponseEntity.ok(batchService.deleteAll(principal.getName(), ids));
+        }
+    }
+
+    // A body that's unreadable from the start (readValues() fails before the first item), so nothing was written
+    @ExceptionHandler({JsonProcessingException.class, IOException.class})
+    private ResponseEntity<Void> unreadableBatch() {
+        return ResponseEntity.badRequest().build();
+    }
+}
@@ -1,26 +1,86 @@
 package aidenwaring.intro.cashcard.controller;
 
+import aidenwaring.intro.cashcard.events.CashCardChangeStream;
+import aidenwaring.intro.cashcard.idempotency.IdempotencyKeyInUseException;
+import aidenwaring.intro.cashcard.idempotency.IdempotencyKeyReusedException;
+import aidenwaring.intro.cashcard.idempotency.IdempotencyStore;
 import aidenwaring.intro.cashcard.record.CashCard;
+import aidenwaring.intro.cashcard.record.CashCardCursor;
+import aidenwaring.intro.cashcard.record.CashCardSummary;
+import aidenwaring.intro.cashcard.record.Money;
+import aidenwaring.intro.cashcard.repository.CashCardExportRepository;
 import aidenwaring.intro.cashcard.repository.CashCardRepository;
-import org.springframework.data.domain.Page;
+import aidenwaring.intro.cashcard.service.CashCardService;
+import aidenwaring.intro.cashcard.service.CashCardSummaryService;
+import aidenwaring.intro.cashcard.service.CashCardWriteBehindService;
+import aidenwaring.intro.cashcard.service.WriteBehindFullException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 import org.springframework.web.util.UriComponentsBuilder;
 import java.security.Principal;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 @RestController
 @RequestMapping("/cashcards")
 public class CashCardController {
+    // Same upper bound Spring Data puts on the page size of Pageable requests
+    private static final int MAX_SLICE_SIZE = 2000;
+    private static final String TOTAL_COUNT = "X-Total-Count";
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    private static final String IDEMPOTENT_REPLAYED = "Idempotent-Replayed";
+
     CashCardRepository cashCardRepository;
+    // Single-card reads and writes go through the service, which caches cards by (id, owner)
+    CashCardService cashCardService;
+    CashCardSummaryService cashCardSummaryService;
+    // Only there when cashcard.write-behind.enabled=true; then PUTs are acknowledged before they reach the database
+    CashCardWriteBehindService cashCardWriteBehindService;
+    CashCardExportRepository cashCardExportRepository;
+    CashCardChangeStream cashCardChangeStream;
+    // Not there when cashcard.idempotency.store=none; then Idempotency-Key headers are ignored
+    IdempotencyStore idempotencyStore;
+    ObjectMapper objectMapper;
+    // Flushing after every card would turn each one into its own tiny network write
+    ObjectWriter exportWriter;
 
-    public CashCardController(CashCardRepository $cashCardRepository) {
+    public CashCardController(CashCardRepository $cashCardRepository, CashCardService $cashCardService,
+                              CashCardSummaryService $cashCardSummaryService,
+                              ObjectProvider<CashCardWriteBehindService> $cashCardWriteBehindService,
+                              CashCardExportRepository $cashCardExportRepository,
+                              CashCardChangeStream $cashCardChangeStream,
+                              ObjectProvider<IdempotencyStore> $idempotencyStore, ObjectMapper $objectMapper) {
         this.cashCardRepository = $cashCardRepository;
+        this.cashCardService = $cashCardService;
+        this.cashCardSummaryService = $cashCardSummaryService;
+        this.cashCardWriteBehindService = $cashCardWriteBehindService.getIfAvailable();
+        this.cashCardExportRepository = $cashCardExportRepository;
+        this.cashCardChangeStream = $cashCardChangeStream;
+        this.idempotencyStore = $idempotencyStore.getIfAvailable();
+        this.objectMapper = $objectMapper;
+        this.exportWriter = $objectMapper.writerFor(CashCard.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
     }
 
     // Spring Web will deserialize the data from the request body into an object
@@ -28,22 +88,60 @@ public class CashCardController {
         We were able to add UriComponentsBuilder ucb as a method argument to this POST
         handler method, and it was automatically passed in. How so?
         It was injected from our now-familiar friend, Spring's IoC Container.
+
+        With an Idempotency-Key header, a retry of the same request (same key and amount) creates nothing:
+        it gets the first attempt's 201 and Location again, marked with Idempotent-Replayed: true.
+        A retry sent while the first attempt is still in progress waits for it (see IdempotencyStore).
+        The same key for a different amount is 422 Unprocessable Entity, and 409 Conflict means the first attempt
+        is taking too long; retrying later with the same key is safe.
      */
     @PostMapping
-    private ResponseEntity<Void> createCashCard(@RequestBody CashCard newCashCardRequest, UriComponentsBuilder ucb, Principal principal) {
-        CashCard cashCardWithOwner = new CashCard(null, newCashCardRequest.amount(), principal.getName());
-        CashCard savedCashCard = cashCardRepository.save(cashCardWithOwner);
+    private ResponseEntity<Void> createCashCard(@RequestBody CashCard newCashCardRequest,
+                                                @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey,
+                                                UriComponentsBuilder ucb, Principal principal) {
+        Money amount = newCashCardRequest.amount();
+        String owner = principal.getName();
+        long id;
+        boolean replayed = false;
+        if (idempotencyKey == null || idempotencyStore == null) {
+            id = cashCardService.create(amount, owner).id();
+        } else if (idempotencyKey.isBlank() || idempotencyKey.length() > IdempotencyStore.MAX_KEY_LENGTH) {
+            return ResponseEntity.badRequest().build();
+        } else {
+            try {
+                IdempotencyStore.Created created = idempotencyStore.create(owner, idempotencyKey, amount,
+                        () -> cashCardService.create(amount, owner).id());
+                id = created.cardId();
+                replayed = created.replayed();
+            } catch (IdempotencyKeyReusedException e) {
+                return ResponseEntity.unprocessableEntity().build();
+            } catch (IdempotencyKeyInUseException e) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).build();
+            }
+        }
         // Building a URI to provide
         URI locationOfNewCashCard = ucb
                 .path("cashcards/{id}")
-                .buildAndExpand(savedCashCard.id())
+                .buildAndExpand(id)
                 .toUri();
-        return ResponseEntity.created(locationOfNewCashCard).build();
+        ResponseEntity.BodyBuilder response = ResponseEntity.created(locationOfNewCashCard);
+        if (replayed) {
+            response.header(IDEMPOTENT_REPLAYED, "true");
+        }
+        return response.build();
     }
 
+    /*
+        Lists carry an ETag too, derived from the id and version of every card in them,
+        so a client polling an unchanged page gets 304 Not Modified without the page being serialized.
+
+        There's no total by default (so no COUNT(*) either, see CashCardRepository.findByOwner).
+        With ?withTotal=true the owner's card count comes back in X-Total-Count, read from their summary row.
+     */
     @GetMapping
-    public ResponseEntity<List<CashCard>> findAll(Pageable pageable, Principal principal) {
-        Page<CashCard> page = cashCardRepository.findByOwner(principal.getName(),
+    public ResponseEntity<List<CashCard>> findAll(Pageable pageable, @RequestParam(defaultValue = "false") boolean withTotal,
+                                                  Principal principal, WebRequest request) {
+        Slice<CashCard> page = cashCardRepository.findByOwner(principal.getName(),
                 PageRequest.of(
                         pageable.getPageNumber(),
                         pageable.getPageSize(),
@@ -51,28 +149,169 @@ public class CashCardController {
                         // ^ Get sort from URI param or use the default specified here
                         // Spring provides default page num and page size (page 0 and size 20)
                 ));
-        return ResponseEntity.ok(page.getContent());
+        Long total = withTotal ? cashCardSummaryService.summaryFor(principal.getName()).count() : null;
+        String eTag = listETag(page.getContent(), total);
+        if (request.checkNotModified(eTag)) {
+            return null; // Spring has already set up the 304 response
+        }
+        return withTotal(ResponseEntity.ok().eTag(eTag), total).body(page.getContent());
+    }
+
+    /*
+        Cursor-based paging, e.g. GET /cashcards?after=&size=10 for the first slice.
+        Always sorted by amount (then id), like the default above. When there are more cards,
+        the response carries a Link header (rel="next") with the cursor for the following slice.
+        ?withTotal=true works as it does above.
+     */
+    @GetMapping(params = "after")
+    public ResponseEntity<List<CashCard>> findAllAfter(@RequestParam String after,
+                                                       @RequestParam(defaultValue = "20") int size,
+                                                       @RequestParam(defaultValue = "false") boolean withTotal,
+                                                       Principal principal, WebRequest request) {
+        CashCardCursor cursor;
+        try {
+            cursor = CashCardCursor.decode(after);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        int sliceSize = Math.max(1, Math.min(size, MAX_SLICE_SIZE));
+        Slice<CashCard> slice = cashCardRepository.findByOwnerAfter(principal.getName(), cursor, sliceSize);
+        Long total = withTotal ? cashCardSummaryService.summaryFor(principal.getName()).count() : null;
+        String eTag = listETag(slice.getContent(), total);
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+
+        ResponseEntity.BodyBuilder response = withTotal(ResponseEntity.ok().eTag(eTag), total);
+        if (slice.hasNext()) {
+            List<CashCard> content = slice.getContent();
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("after", CashCardCursor.of(content.get(content.size() - 1)).encode())
+                    .replaceQueryParam("size", sliceSize)
+                    .toUriString();
+            response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return response.body(slice.getContent());
+    }
+
+    /*
+        The principal's card count, total, smallest and largest amount.
+        Read from a summary row that every write keeps up to date, so it costs the same for 3 cards or 3 million.
+     */
+    @GetMapping("/summary")
+    public ResponseEntity<CashCardSummary> summary(Principal principal) {
+        return ResponseEntity.ok(cashCardSummaryService.summaryFor(principal.getName()));
     }
 
+    /*
+        Exports all the principal's cards in one response, written while they're read from the database.
+        NDJSON (one card per line) by default, or a single JSON array when the client asks for application/json.
+        StreamingResponseBody writes on an async thread after this method returns, so grab the owner now.
+     */
+    @GetMapping(value = "/export", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<StreamingResponseBody> exportCashCards(
+            @RequestHeader(value = HttpHeaders.ACCEPT, defaultValue = MediaType.APPLICATION_NDJSON_VALUE) String accept,
+            Principal principal) {
+        String owner = principal.getName();
+        boolean jsonArray = MediaType.parseMediaTypes(accept).stream()
+                .anyMatch(MediaType.APPLICATION_JSON::equalsTypeAndSubtype);
+
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.setRootValueSeparator(null);
+                if (jsonArray) {
+                    generator.writeStartArray();
+                }
+                cashCardExportRepository.forEachByOwner(owner, cashCard -> {
+                    try {
+                        exportWriter.writeValue(generator, cashCard);
+                        if (!jsonArray) {
+                            generator.writeRaw('\n');
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                if (jsonArray) {
+                    generator.writeEndArray();
+                }
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(jsonArray ? MediaType.APPLICATION_JSON : MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    /*
+        The principal's card changes as Server-Sent Events, from the outbox (see CashCardChangeStream),
+        so a consumer can follow changes instead of polling GET /cashcards.
+        Starts after the offset in ?since= or Last-Event-ID (what EventSource sends when it reconnects),
+        or with the next change if there's neither. 410 Gone if changes after that offset have been pruned,
+        503 Service Unavailable if the most streams we serve at once are already open.
+     */
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> changes(@RequestParam(required = false) Long since,
+                                              @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId,
+                                              Principal principal) {
+        Long after = since != null ? since : lastEventId;
+        if (after == null) {
+            after = cashCardChangeStream.latestOffset();
+        } else if (!cashCardChangeStream.canResumeFrom(after)) {
+            return ResponseEntity.status(HttpStatus.GONE).build();
+        }
+        SseEmitter emitter = cashCardChangeStream.subscribe(principal.getName(), after);
+        if (emitter == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
+        }
+        return ResponseEntity.ok(emitter);
+    }
+
+    /*
+        The card's version is its (strong) ETag. A client that sends it back in If-None-Match
+        gets 304 Not Modified while the card hasn't changed, straight from the cache and without a body.
+     */
     @GetMapping("/{requestedId}")
 
-    public ResponseEntity<CashCard> findById(@PathVariable Long requestedId, Principal principal) {
+    public ResponseEntity<CashCard> findById(@PathVariable Long requestedId, Principal principal, WebRequest request) {
         // The Principal holds our user's authenticated, authorized information from the request header.
         CashCard cashCard = getByIdAndOwner(requestedId, principal);
-        if (cashCard != null) {
-            return ResponseEntity.ok(cashCard);
-        } else {
+        if (cashCard == null) {
             return ResponseEntity.notFound().build();
         }
+        if (cashCard.version() == null) {
+            // An update that hasn't been written yet (write-behind): there's no version to name it by
+            return ResponseEntity.ok(cashCard);
+        }
+        String eTag = eTag(cashCard);
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(eTag).body(cashCard);
     }
 
 
+    /*
+        With If-Match: "<version>" the update only goes through if nobody else has changed the card since the client
+        read that version; otherwise it's 412 Precondition Failed and the client should GET the card again.
+        Without If-Match the update is unconditional, as before.
+     */
     @PutMapping("/{requestedId}")
-    private ResponseEntity<Void> putCashCard(@PathVariable Long requestedId, @RequestBody CashCard cashCardUpdate, Principal principal) {
-        CashCard cashCard = getByIdAndOwner(requestedId, principal);
-        if (cashCard != null) {
-            CashCard updatedCashCard = new CashCard(cashCard.id(), cashCardUpdate.amount(), principal.getName());
-            cashCardRepository.save(updatedCashCard);
+    private ResponseEntity<Void> putCashCard(@PathVariable Long requestedId, @RequestBody CashCard cashCardUpdate,
+                                             @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                             Principal principal) {
+        Long expectedVersion = expectedVersion(ifMatch);
+        boolean updated;
+        try {
+            updated = cashCardWriteBehindService != null
+                    ? cashCardWriteBehindService.update(requestedId, cashCardUpdate.amount(), principal.getName(), expectedVersion)
+                    : cashCardService.update(requestedId, cashCardUpdate.amount(), principal.getName(), expectedVersion);
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+        } catch (WriteBehindFullException e) {
+            // Nothing was written, so the client can simply send the update again
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
+        }
+        if (updated) {
             return ResponseEntity.noContent().build();
         }
         return ResponseEntity.notFound().build();
@@ -81,14 +320,57 @@ public class CashCardController {
     @DeleteMapping("/{id}")
     private ResponseEntity<Void> deleteCashCard(@PathVariable Long id, Principal principal) {
         // Checks if the record exists and the Principal is the owner of the card
-        if (!cashCardRepository.existsByIdAndOwner(id, principal.getName())) {
+        if (!cashCardService.delete(id, principal.getName())) {
             return ResponseEntity.notFound().build();
         }
-        cashCardRepository.deleteById(id);
         return ResponseEntity.noContent().build();
     }
 
+    private static String eTag(CashCard cashCard) {
+        return "\"" + cashCard.version() + "\"";
+    }
+
+    /*
+        Any change to any card in the list (or to which cards are in it) changes the ETag,
+        and so does a change of the total when there is one, even if this page stayed the same.
+     */
+    private static String listETag(List<CashCard> cashCards, Long total) {
+        StringBuilder versions = new StringBuilder(cashCards.size() * 16 + 20);
+        for (CashCard cashCard : cashCards) {
+            versions.append(cashCard.id()).append(':').append(cashCard.version()).append(',');
+        }
+        if (total != null) {
+            versions.append("total:").append(total);
+        }
+        return "\"" + DigestUtils.md5DigestAsHex(versions.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    private static ResponseEntity.BodyBuilder withTotal(ResponseEntity.BodyBuilder response, Long total) {
+        return total == null ? response : response.header(TOTAL_COUNT, String.valueOf(total));
+    }
+
+    /*
+        null for no If-Match or "*" (any version will do). An If-Match that isn't one of our ETags
+        (a weak or malformed one, or a list) can't match any version, so it's -1.
+     */
+    private static Long expectedVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String eTag = ifMatch.trim();
+        if (eTag.length() > 2 && eTag.startsWith("\"") && eTag.endsWith("\"")) {
+            try {
+                return Long.valueOf(eTag.substring(1, eTag.length() - 1));
+            } catch (NumberFormatException e) {
+                return -1L;
+            }
+        }
+        return -1L;
+    }
+
     private CashCard getByIdAndOwner(Long requestedId, Principal principal) {
-        return cashCardRepository.findByIdAndOwner(requestedId, principal.getName());
+        CashCard cashCard = cashCardService.findByIdAndOwner(requestedId, principal.getName());
+        // A PUT that hasn't been flushed yet must still be visible to the client that made it
+        return cashCardWriteBehindService != null ? cashCardWriteBehindService.withPendingUpdate(cashCard) : cashCard;
     }
 }
\ No newline at end of file
@@ -0,0 +1,31 @@
+package aidenwaring.intro.cashcard.events;
+
+import aidenwaring.intro.cashcard.record.CashCardEvent;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/*
+The in-process bus: each batch is published as a Spring application event,
+so any bean can follow card changes with an @EventListener for CashCardEventsPublished.
+Listeners run on the relay's thread unless they're @Async.
+ */
+@Component
+@ConditionalOnProperty(name = "cashcard.events.bus.enabled", havingValue = "true")
+public class ApplicationEventSink implements CashCardEventSink {
+    private final ApplicationEventPublisher publisher;
+
+    public ApplicationEventSink(ApplicationEventPublisher publisher) {
+        this.publisher = publisher;
+    }
+
+    @Override
+    public void publish(List<CashCardEvent> events) {
+        publisher.publishEvent(new CashCardEventsPublished(events));
+    }
+
+    public record CashCardEventsPublished(List<CashCardEvent> events) {
+    }
+}
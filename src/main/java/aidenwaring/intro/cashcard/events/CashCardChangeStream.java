@@ -0,0 +1,211 @@
+package aidenwaring.intro.cashcard.events;
+
+import aidenwaring.intro.cashcard.record.CashCardEvent;
+import aidenwaring.intro.cashcard.repository.CashCardEventRepository;
+import aidenwaring.intro.cashcard.sharding.Shards;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+Server-Sent Events for GET /cashcards/changes: each subscriber gets their own cards' events, starting after an offset.
+
+A subscription first catches up from the outbox table, then follows what the relay publishes; events the relay
+publishes meanwhile are queued and only sent if catching up didn't already cover them. Every event carries its offset
+as its SSE id, so a client that reconnects (EventSource does so by itself) resumes with Last-Event-ID.
+
+Events are sent from a fixed pool of `senders` threads, never from the relay's thread. Sending blocks on the client's
+socket once its buffer is full, so a client that stops reading holds a sender until its connection drops; the other
+subscribers' events wait for the remaining senders. Each subscription has at most one sending task queued, so there's
+room for every subscription's task, and one that still can't be queued is disconnected.
+One that falls more than `maximumQueued` events behind is disconnected, and catches up from the table when it comes back.
+At most `maximumSubscriptions` streams are open at once (GET /cashcards/changes isn't counted by the admission limit):
+past that, subscribe() turns new ones away.
+ */
+@Component
+public class CashCardChangeStream implements CashCardEventSink, DisposableBean {
+    private static final int CATCH_UP_PAGE_SIZE = 500;
+
+    private final CashCardEventRepository eventRepository;
+    private final long timeoutMillis;
+    private final int maximumQueued;
+    private final int maximumSubscriptions;
+    private final Map<String, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriptionCount = new AtomicInteger();
+    private final ThreadPoolExecutor senders;
+
+    public CashCardChangeStream(CashCardEventRepository eventRepository,
+                                @Value("${cashcard.events.sse.timeout}") Duration timeout,
+                                @Value("${cashcard.events.sse.maximum-queued}") int maximumQueued,
+                                @Value("${cashcard.events.sse.maximum-subscriptions}") int maximumSubscriptions,
+                                @Value("${cashcard.events.sse.senders}") int senders) {
+        this.eventRepository = eventRepository;
+        this.timeoutMillis = timeout.toMillis();
+        this.maximumQueued = maximumQueued;
+        this.maximumSubscriptions = maximumSubscriptions;
+        this.senders = new ThreadPoolExecutor(senders, senders, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maximumSubscriptions), runnable -> {
+                    Thread thread = new Thread(runnable, "cashcard-change-stream");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    // The offset to follow from when the client doesn't give one: only changes from now on
+    public long latestOffset() {
+        return eventRepository.lastNumbered();
+    }
+
+    // False once events after `since` have been pruned, so the client has to rescan its cards instead
+    public boolean canResumeFrom(long since) {
+        return since >= eventRepository.prunedThrough();
+    }
+
+    // Null when maximumSubscriptions streams are already open
+    public SseEmitter subscribe(String owner, long since) {
+        if (subscriptionCount.incrementAndGet() > maximumSubscriptions) {
+            subscriptionCount.decrementAndGet();
+            return null;
+        }
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscription subscription = new Subscription(owner, emitter, since);
+        subscriptions.computeIfAbsent(owner, key -> ConcurrentHashMap.newKeySet()).add(subscription);
+        emitter.onCompletion(subscription::close);
+        emitter.onTimeout(subscription::close);
+        emitter.onError(e -> subscription.close());
+        subscription.scheduleSending();
+        return emitter;
+    }
+
+    @Override
+    public void publish(List<CashCardEvent> events) {
+        for (CashCardEvent event : events) {
+            Set<Subscription> owners = subscriptions.get(event.owner());
+            if (owners != null) {
+                owners.forEach(subscription -> subscription.queue(event));
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        senders.shutdownNow();
+        subscriptions.values().forEach(owners -> owners.forEach(subscription -> subscription.emitter.complete()));
+    }
+
+    private class Subscription {
+        private final String owner;
+        private final SseEmitter emitter;
+        private final Queue<CashCardEvent> queued = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queuedCount = new AtomicInteger();
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        // Only touched by the one sending task running at a time
+        private long lastSent;
+        private volatile boolean caughtUp;
+
+        Subscription(String owner, SseEmitter emitter, long since) {
+            this.owner = owner;
+            this.emitter = emitter;
+            this.lastSent = since;
+        }
+
+        void queue(CashCardEvent event) {
+            queued.add(event);
+            if (queuedCount.incrementAndGet() > maximumQueued) {
+                close();
+                emitter.complete();
+                return;
+            }
+            scheduleSending();
+        }
+
+        void scheduleSending() {
+            if ((!caughtUp || !queued.isEmpty()) && sending.compareAndSet(false, true)) {
+                try {
+                    senders.execute(this::send);
+                } catch (RejectedExecutionException e) {
+                    close();
+                    emitter.completeWithError(e);
+                }
+            }
+        }
+
+        private void send() {
+            try {
+                if (!caughtUp) {
+                    // The owner's events are on the owner's shard, and this thread has no principal to find it by
+                    Shards.forOwner(owner, () -> {
+                        catchUp();
+                        return null;
+                    });
+                    caughtUp = true;
+                }
+                CashCardEvent event;
+                while ((event = queued.poll()) != null) {
+                    queuedCount.decrementAndGet();
+                    if (event.offset() > lastSent) {
+                        sendEvent(event);
+                    }
+                }
+            } catch (Exception e) {
+                close();
+                emitter.completeWithError(e);
+            } finally {
+                sending.set(false);
+            }
+            if (!queued.isEmpty()) {
+                scheduleSending();
+            }
+        }
+
+        private void catchUp() {
+            List<CashCardEvent> page;
+            do {
+                page = eventRepository.findByOwnerAfter(owner, lastSent, CATCH_UP_PAGE_SIZE);
+                for (CashCardEvent event : page) {
+                    sendEvent(event);
+                }
+            } while (page.size() == CATCH_UP_PAGE_SIZE);
+        }
+
+        private void sendEvent(CashCardEvent event) {
+            try {
+                emitter.send(SseEmitter.event().id(String.valueOf(event.offset())).data(event, MediaType.APPLICATION_JSON));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            lastSent = event.offset();
+        }
+
+        // Called however the stream ends, often more than once
+        void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            subscriptionCount.decrementAndGet();
+            subscriptions.computeIfPresent(owner, (key, owners) -> {
+                owners.remove(this);
+                return owners.isEmpty() ? null : owners;
+            });
+        }
+    }
+}
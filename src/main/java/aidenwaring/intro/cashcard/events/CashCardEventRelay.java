@@ -0,0 +1,133 @@
+package aidenwaring.intro.cashcard.events;
+
+import aidenwaring.intro.cashcard.record.CashCardEvent;
+import aidenwaring.intro.cashcard.repository.CashCardEventRepository;
+import aidenwaring.intro.cashcard.sharding.Shards;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntConsumer;
+
+/*
+Moves card events from the outbox table to the sinks: numbers newly committed events, then publishes
+everything numbered since the last run to every CashCardEventSink, in batches of up to `batchSize`.
+
+Runs on a single thread of its own, woken up after every local commit (see CashCardOutbox) and every relay interval,
+which picks up what other instances wrote. Wake-ups that arrive while a run is pending are merged into it.
+Each instance publishes every event to its own sinks, so its SSE clients see changes made through any instance.
+With sharding, each shard's outbox is relayed in turn, with offsets per shard.
+ */
+@Component
+public class CashCardEventRelay implements DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(CashCardEventRelay.class);
+
+    private final CashCardEventRepository eventRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final List<CashCardEventSink> sinks;
+    private final Shards shards;
+    private final int batchSize;
+    private final Duration retention;
+    private final ExecutorService relayThread = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cashcard-event-relay");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean runPending = new AtomicBoolean();
+    // Per shard, the last offset published; only touched on the relay thread. Until the first run, nothing is
+    // published from before startup: the sinks are live, and consumers catch up on history from the table
+    private final long[] published;
+
+    public CashCardEventRelay(CashCardEventRepository eventRepository, TransactionTemplate transactionTemplate,
+                              List<CashCardEventSink> sinks, ObjectProvider<Shards> shards,
+                              @Value("${cashcard.events.relay-batch-size}") int batchSize,
+                              @Value("${cashcard.events.retention}") Duration retention) {
+        this.eventRepository = eventRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.sinks = sinks;
+        this.shards = shards.getIfAvailable();
+        this.batchSize = batchSize;
+        this.retention = retention;
+        this.published = new long[this.shards == null ? 1 : this.shards.count()];
+        Arrays.fill(published, -1);
+    }
+
+    public void wakeUp() {
+        if (runPending.compareAndSet(false, true)) {
+            relayThread.execute(() -> {
+                runPending.set(false);
+                try {
+                    forEachShard(this::relay);
+                } catch (RuntimeException e) {
+                    // The events are still in the table; the next run tries again
+                    log.warn("Relaying card events failed", e);
+                }
+            });
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${cashcard.events.relay-interval}")
+    public void poll() {
+        wakeUp();
+    }
+
+    // Consumers can resume from any offset within the retention period
+    @Scheduled(initialDelayString = "${cashcard.events.prune-interval}", fixedDelayString = "${cashcard.events.prune-interval}")
+    public void prune() {
+        Instant before = Instant.now().minus(retention);
+        forEachShard(shard -> {
+            Integer pruned = transactionTemplate.execute(status -> eventRepository.pruneBefore(before));
+            log.info("Pruned {} card events older than {}", pruned, before);
+        });
+    }
+
+    private void relay(int shard) {
+        if (published[shard] < 0) {
+            published[shard] = eventRepository.lastNumbered();
+        }
+        while (transactionTemplate.execute(status -> eventRepository.numberNew(batchSize)) == batchSize) {
+            // More were waiting; number those too before publishing
+        }
+        List<CashCardEvent> events;
+        do {
+            events = eventRepository.findAfter(published[shard], batchSize);
+            if (!events.isEmpty()) {
+                for (CashCardEventSink sink : sinks) {
+                    sink.publish(events);
+                }
+                published[shard] = events.get(events.size() - 1).offset();
+            }
+        } while (events.size() == batchSize);
+    }
+
+    private void forEachShard(IntConsumer work) {
+        if (shards == null) {
+            work.accept(0);
+            return;
+        }
+        for (int shard = 0; shard < shards.count(); shard++) {
+            int current = shard;
+            Shards.onShard(shard, () -> {
+                work.accept(current);
+                return null;
+            });
+        }
+    }
+
+    @Override
+    public void destroy() {
+        relayThread.shutdownNow();
+    }
+}
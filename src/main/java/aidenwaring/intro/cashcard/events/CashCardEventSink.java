@@ -0,0 +1,15 @@
+package aidenwaring.intro.cashcard.events;
+
+import aidenwaring.intro.cashcard.record.CashCardEvent;
+
+import java.util.List;
+
+/*
+Somewhere CashCardEventRelay publishes card events to. Every bean implementing this gets every batch,
+in offset order, on the relay's thread: a sink that can block (on a slow consumer, say) should hand the events off.
+Delivery is at least once: events numbered before a restart aren't published again, but a consumer
+that resumes from its own offset (see CashCardChangeStream) gets them from the outbox table.
+ */
+public interface CashCardEventSink {
+    void publish(List<CashCardEvent> events);
+}
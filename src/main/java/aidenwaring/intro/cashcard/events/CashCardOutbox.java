@@ -0,0 +1,44 @@
+package aidenwaring.intro.cashcard.events;
+
+import aidenwaring.intro.cashcard.record.CashCardEvent;
+import aidenwaring.intro.cashcard.repository.CashCardEventRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+/*
+Where CashCardService and CashCardBatchService record what they changed, in the transaction that changes it.
+Once that transaction has committed the relay is woken up, so events are published within milliseconds
+rather than on its next poll.
+ */
+@Component
+public class CashCardOutbox {
+    private final CashCardEventRepository eventRepository;
+    private final CashCardEventRelay relay;
+
+    public CashCardOutbox(CashCardEventRepository eventRepository, CashCardEventRelay relay) {
+        this.eventRepository = eventRepository;
+        this.relay = relay;
+    }
+
+    public void record(CashCardEvent event) {
+        record(List.of(event));
+    }
+
+    public void record(List<CashCardEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        eventRepository.append(events);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    relay.wakeUp();
+                }
+            });
+        }
+    }
+}
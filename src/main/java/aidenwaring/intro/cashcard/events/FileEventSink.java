@@ -0,0 +1,54 @@
+package aidenwaring.intro.cashcard.events;
+
+import aidenwaring.intro.cashcard.record.CashCardEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/*
+Appends every event to a local NDJSON file, one line per event, flushed after each batch,
+for tools that tail a file (log shippers, say) rather than speak HTTP.
+Only events published while this instance runs end up in its file.
+ */
+@Component
+@ConditionalOnProperty(name = "cashcard.events.file.enabled", havingValue = "true")
+public class FileEventSink implements CashCardEventSink, DisposableBean {
+    private final ObjectWriter eventWriter;
+    private final BufferedWriter file;
+
+    public FileEventSink(ObjectMapper objectMapper, @Value("${cashcard.events.file.path}") Path path) throws IOException {
+        this.eventWriter = objectMapper.writerFor(CashCardEvent.class);
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        this.file = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public void publish(List<CashCardEvent> events) {
+        try {
+            for (CashCardEvent event : events) {
+                file.write(eventWriter.writeValueAsString(event));
+                file.newLine();
+            }
+            file.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        file.close();
+    }
+}
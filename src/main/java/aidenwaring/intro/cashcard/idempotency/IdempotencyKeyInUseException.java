@@ -0,0 +1,9 @@
+package aidenwaring.intro.cashcard.idempotency;
+
+// Another request with the same key was still being processed when we stopped waiting for it
+public class IdempotencyKeyInUseException extends RuntimeException {
+
+    public IdempotencyKeyInUseException(String key) {
+        super("A request with idempotency key " + key + " is still in progress");
+    }
+}
@@ -0,0 +1,9 @@
+package aidenwaring.intro.cashcard.idempotency;
+
+// The key already created a card, but for a different request (so this isn't a retry of it)
+public class IdempotencyKeyReusedException extends RuntimeException {
+
+    public IdempotencyKeyReusedException(String key) {
+        super("Idempotency key " + key + " was already used for a different request");
+    }
+}
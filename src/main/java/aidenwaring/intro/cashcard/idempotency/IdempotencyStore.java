@@ -0,0 +1,31 @@
+package aidenwaring.intro.cashcard.idempotency;
+
+import aidenwaring.intro.cashcard.record.Money;
+
+import java.util.function.Supplier;
+
+/*
+Remembers which card each Idempotency-Key of POST /cashcards created, so a client retrying the same request
+(after a timeout, say) gets the card it already has instead of a duplicate.
+
+Keys are per owner: two owners can use the same key without seeing each other's cards.
+A retry that arrives while the first attempt is still being written waits for it rather than racing it,
+for up to the wait timeout (then IdempotencyKeyInUseException). Reusing a key for a different amount is
+a client bug, not a retry, and throws IdempotencyKeyReusedException.
+
+InMemoryIdempotencyStore is for a single instance, JdbcIdempotencyStore shares the keys between instances
+(cashcard.idempotency.store picks one). Either keeps a key for at least the retention period.
+ */
+public interface IdempotencyStore {
+    int MAX_KEY_LENGTH = 255;
+
+    /*
+        Runs create, unless the owner's key already created a card. Either way, returns the card's id.
+        If create fails, the key isn't used up: the next attempt with it runs create again.
+     */
+    Created create(String owner, String key, Money amount, Supplier<Long> create);
+
+    // replayed is true when the card was created by an earlier request with the same key
+    record Created(long cardId, boolean replayed) {
+    }
+}
@@ -0,0 +1,106 @@
+package aidenwaring.intro.cashcard.idempotency;
+
+import aidenwaring.intro.cashcard.record.Money;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/*
+The keys of this instance only, in a Caffeine cache bounded by size and by age (the retention).
+Fine for a single instance, or behind a load balancer that sends an owner's retries to the same one;
+otherwise use JdbcIdempotencyStore.
+
+A request claims its key in `inProgress` while it creates the card, and a concurrent retry with the same key waits
+for that attempt's outcome instead: its card, or (if creating it failed) the chance to try again itself.
+Only requests with the same owner and key ever wait for each other, and a key leaves `inProgress`
+as soon as its attempt is over, so the map only holds the keys being worked on right now.
+ */
+@Component
+@ConditionalOnProperty(name = "cashcard.idempotency.store", havingValue = "memory")
+public class InMemoryIdempotencyStore implements IdempotencyStore {
+    private final Cache<OwnerKey, UsedKey> entries;
+    private final Map<OwnerKey, CompletableFuture<UsedKey>> inProgress = new ConcurrentHashMap<>();
+    private final long waitTimeoutNanos;
+
+    public InMemoryIdempotencyStore(@Value("${cashcard.idempotency.maximum-size}") long maximumSize,
+                                    @Value("${cashcard.idempotency.retention}") Duration retention,
+                                    @Value("${cashcard.idempotency.wait-timeout}") Duration waitTimeout) {
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(retention)
+                .build();
+        this.waitTimeoutNanos = waitTimeout.toNanos();
+    }
+
+    @Override
+    public Created create(String owner, String key, Money amount, Supplier<Long> create) {
+        OwnerKey ownerKey = new OwnerKey(owner, key);
+        long deadline = System.nanoTime() + waitTimeoutNanos;
+        while (true) {
+            // Most retries come after the first attempt finished, and don't need to claim the key
+            UsedKey used = entries.getIfPresent(ownerKey);
+            if (used != null) {
+                return used.replay(key, amount);
+            }
+
+            CompletableFuture<UsedKey> attempt = new CompletableFuture<>();
+            CompletableFuture<UsedKey> other = inProgress.putIfAbsent(ownerKey, attempt);
+            if (other == null) {
+                return createClaimed(ownerKey, amount, create, attempt);
+            }
+            used = await(other, key, deadline);
+            if (used != null) {
+                return used.replay(key, amount);
+            }
+        }
+    }
+
+    private Created createClaimed(OwnerKey ownerKey, Money amount, Supplier<Long> create, CompletableFuture<UsedKey> attempt) {
+        try {
+            // The attempt we may just have missed in inProgress could have finished in between
+            UsedKey used = entries.getIfPresent(ownerKey);
+            if (used != null) {
+                attempt.complete(used);
+                return used.replay(ownerKey.key(), amount);
+            }
+            long cardId = create.get();
+            used = new UsedKey(amount, cardId);
+            entries.put(ownerKey, used);
+            attempt.complete(used);
+            return new Created(cardId, false);
+        } catch (RuntimeException | Error e) {
+            attempt.completeExceptionally(e);
+            throw e;
+        } finally {
+            inProgress.remove(ownerKey, attempt);
+        }
+    }
+
+    // Returns the other attempt's key, or null if it failed and the key is free to claim again
+    private UsedKey await(CompletableFuture<UsedKey> other, String key, long deadline) {
+        try {
+            return other.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            return null;
+        } catch (TimeoutException e) {
+            throw new IdempotencyKeyInUseException(key);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IdempotencyKeyInUseException(key);
+        }
+    }
+
+    private record OwnerKey(String owner, String key) {
+    }
+}
@@ -0,0 +1,136 @@
+package aidenwaring.intro.cashcard.idempotency;
+
+import aidenwaring.intro.cashcard.record.Money;
+import aidenwaring.intro.cashcard.sharding.Shards;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/*
+The keys in cash_card_idempotency_key, shared by every instance (and on the owner's shard, when sharded).
+
+The key's row is inserted first, then the card, then the row gets the card's id, all in one transaction.
+The primary key on (owner, key) makes a concurrent insert of the same key fail (most databases hold it until
+the first transaction ends), so of two racing requests only one creates a card. The other then waits for the row
+to be committed, and returns its card; if the first one rolls back instead, the row goes away and the other
+one claims the key itself. Only the key's insert is treated that way: a card that fails to be created
+fails the request, with the key left unused.
+
+Rows are kept for at least the retention period, and pruned every prune interval.
+ */
+@Component
+@ConditionalOnProperty(name = "cashcard.idempotency.store", havingValue = "jdbc")
+public class JdbcIdempotencyStore implements IdempotencyStore {
+    private static final Logger log = LoggerFactory.getLogger(JdbcIdempotencyStore.class);
+    // How often a waiting request looks for the committed row
+    private static final long POLL_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private static final RowMapper<UsedKey> USED_KEY = (row, rowNum) -> {
+        long amount = row.getLong("amount");
+        Money money = row.wasNull() ? null : Money.ofMinorUnits(amount);
+        return new UsedKey(money, row.getLong("card_id"));
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration retention;
+    private final long waitTimeoutNanos;
+    // Only there when cashcard.sharding.enabled=true; then every shard is pruned in turn
+    private final Shards shards;
+
+    public JdbcIdempotencyStore(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                                @Value("${cashcard.idempotency.retention}") Duration retention,
+                                @Value("${cashcard.idempotency.wait-timeout}") Duration waitTimeout,
+                                ObjectProvider<Shards> shards) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.retention = retention;
+        this.waitTimeoutNanos = waitTimeout.toNanos();
+        this.shards = shards.getIfAvailable();
+    }
+
+    @Override
+    public Created create(String owner, String key, Money amount, Supplier<Long> create) {
+        long deadline = System.nanoTime() + waitTimeoutNanos;
+        while (true) {
+            UsedKey used = find(owner, key);
+            if (used != null) {
+                return used.replay(key, amount);
+            }
+            Long cardId = transactionTemplate.execute(status -> {
+                if (!claim(owner, key, amount)) {
+                    // Some databases won't commit a transaction a statement failed in
+                    status.setRollbackOnly();
+                    return null;
+                }
+                Long created = create.get();
+                jdbcTemplate.update("UPDATE cash_card_idempotency_key SET card_id = ? WHERE owner = ? AND idempotency_key = ?",
+                        created, owner, key);
+                return created;
+            });
+            if (cardId != null) {
+                return new Created(cardId, false);
+            }
+            if (System.nanoTime() - deadline > 0) {
+                throw new IdempotencyKeyInUseException(key);
+            }
+            LockSupport.parkNanos(POLL_INTERVAL_NANOS);
+        }
+    }
+
+    // Returns false if another request holds the key: one still in progress, or that has just committed
+    private boolean claim(String owner, String key, Money amount) {
+        try {
+            jdbcTemplate.update("INSERT INTO cash_card_idempotency_key (owner, idempotency_key, amount) VALUES (?, ?, ?)",
+                    owner, key, amount == null ? null : amount.minorUnits());
+            return true;
+        } catch (DuplicateKeyException | ConcurrencyFailureException e) {
+            // Some databases give up waiting for the other request's row lock rather than report a duplicate
+            return false;
+        }
+    }
+
+    @Scheduled(initialDelayString = "${cashcard.idempotency.prune-interval}",
+            fixedDelayString = "${cashcard.idempotency.prune-interval}")
+    public void prune() {
+        Timestamp before = Timestamp.from(Instant.now().minus(retention));
+        if (shards == null) {
+            pruneOnCurrentShard(before);
+            return;
+        }
+        for (int shard = 0; shard < shards.count(); shard++) {
+            Shards.onShard(shard, () -> pruneOnCurrentShard(before));
+        }
+    }
+
+    private int pruneOnCurrentShard(Timestamp before) {
+        int pruned = jdbcTemplate.update("DELETE FROM cash_card_idempotency_key WHERE created_at < ?", before);
+        log.info("Pruned {} idempotency keys older than {}", pruned, before.toInstant());
+        return pruned;
+    }
+
+    // Only finds committed rows (uncommitted ones aren't visible to us), which always have their card's id
+    private UsedKey find(String owner, String key) {
+        List<UsedKey> usedKeys = jdbcTemplate.query(
+                "SELECT amount, card_id FROM cash_card_idempotency_key WHERE owner = ? AND idempotency_key = ? AND card_id IS NOT NULL",
+                USED_KEY, owner, key);
+        return usedKeys.isEmpty() ? null : usedKeys.get(0);
+    }
+}
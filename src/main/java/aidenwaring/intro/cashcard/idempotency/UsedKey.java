@@ -0,0 +1,16 @@
+package aidenwaring.intro.cashcard.idempotency;
+
+import aidenwaring.intro.cashcard.record.Money;
+
+import java.util.Objects;
+
+// What a store remembers about a key: the card it created, and the amount it was asked for
+record UsedKey(Money amount, long cardId) {
+
+    IdempotencyStore.Created replay(String key, Money requested) {
+        if (!Objects.equals(amount, requested)) {
+            throw new IdempotencyKeyReusedException(key);
+        }
+        return new IdempotencyStore.Created(cardId, true);
+    }
+}
@@ -0,0 +1,62 @@
+package aidenwaring.intro.cashcard.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.core.Ordered;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+Records how many JDBC statements each request ran, as the cashcard.jdbc.statements distribution,
+tagged with the same method and uri (the handler's path pattern) as http.server.requests.
+
+Runs just before Spring Security, so statements run to authenticate the request are included.
+Streaming responses (GET /cashcards/export) do their reading on another thread, which isn't counted.
+There is one distribution per method and path pattern, so they are built once and kept here by method, then uri:
+a request only looks two Strings up, instead of building a meter and having the registry find its twin.
+ */
+public class QueryCountFilter extends OncePerRequestFilter implements Ordered {
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Map<String, DistributionSummary>> summaries = new ConcurrentHashMap<>();
+
+    public QueryCountFilter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        QueryCountingDataSource.startCounting();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            int statements = QueryCountingDataSource.stopCounting();
+            Object uri = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            summaryFor(request.getMethod(), uri == null ? "UNKNOWN" : uri.toString()).record(statements);
+        }
+    }
+
+    private DistributionSummary summaryFor(String method, String uri) {
+        return summaries.computeIfAbsent(method, m -> new ConcurrentHashMap<>())
+                .computeIfAbsent(uri, u -> DistributionSummary.builder("cashcard.jdbc.statements")
+                        .description("JDBC statements run per HTTP request")
+                        .baseUnit("statements")
+                        .tag("method", method)
+                        .tag("uri", uri)
+                        .register(meterRegistry));
+    }
+
+    @Override
+    public int getOrder() {
+        return SecurityProperties.DEFAULT_FILTER_ORDER - 1;
+    }
+}
@@ -0,0 +1,65 @@
+package aidenwaring.intro.cashcard.metrics;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/*
+Counts the JDBC statements the current thread creates while counting is switched on (see QueryCountFilter).
+
+Every repository call ends up preparing a statement on a connection from here, whether it comes from
+Spring Data, a JdbcTemplate or plain JDBC, so a request that loads cards one by one (an N+1 pattern)
+shows up as a high statement count for its endpoint. A JDBC batch counts once.
+ */
+public class QueryCountingDataSource extends DelegatingDataSource {
+    private static final ThreadLocal<int[]> statements = new ThreadLocal<>();
+
+    public QueryCountingDataSource(DataSource targetDataSource) {
+        super(targetDataSource);
+    }
+
+    static void startCounting() {
+        statements.set(new int[1]);
+    }
+
+    // Returns the number of statements created since startCounting()
+    static int stopCounting() {
+        int[] count = statements.get();
+        statements.remove();
+        return count == null ? 0 : count[0];
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return counting(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return counting(super.getConnection(username, password));
+    }
+
+    private static Connection counting(Connection connection) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            String name = method.getName();
+            if (name.startsWith("prepare") || name.equals("createStatement")) {
+                int[] count = statements.get();
+                if (count != null) {
+                    count[0]++;
+                }
+            }
+            try {
+                return method.invoke(connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(
+                QueryCountingDataSource.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+    }
+}
@@ -0,0 +1,53 @@
+package aidenwaring.intro.cashcard.metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/*
+The JSON converter Spring MVC uses for request and response bodies, timed as cashcard.json.read and cashcard.json.write.
+Responses are written into Tomcat's buffer, so for all but large bodies the write time is serialization, not network.
+GET /cashcards/export writes its own JSON and isn't included.
+ */
+public class TimedJsonHttpMessageConverter extends MappingJackson2HttpMessageConverter {
+    private final Timer reads;
+    private final Timer writes;
+
+    public TimedJsonHttpMessageConverter(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        super(objectMapper);
+        this.reads = Timer.builder("cashcard.json.read")
+                .description("Time spent deserializing JSON request bodies")
+                .register(meterRegistry);
+        this.writes = Timer.builder("cashcard.json.write")
+                .description("Time spent serializing JSON response bodies")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage)
+            throws IOException, HttpMessageNotReadableException {
+        Timer.Sample sample = Timer.start();
+        try {
+            return super.read(type, contextClass, inputMessage);
+        } finally {
+            sample.stop(reads);
+        }
+    }
+
+    @Override
+    protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage) throws IOException {
+        Timer.Sample sample = Timer.start();
+        try {
+            super.writeInternal(object, type, outputMessage);
+        } finally {
+            sample.stop(writes);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package aidenwaring.intro.cashcard.metrics;
+
+import io.micrometer.core.instrument.Timer;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/*
+Times every password check (the BCrypt comparison) as cashcard.security.password.checks.
+Requests whose credentials are served from the VerifiedCredentialCache never get here,
+so together with spring.security.authentications this shows what the cache saves.
+ */
+public class TimedPasswordEncoder implements PasswordEncoder {
+    private final PasswordEncoder delegate;
+    private final Timer checks;
+
+    public TimedPasswordEncoder(PasswordEncoder delegate, Timer checks) {
+        this.delegate = delegate;
+        this.checks = checks;
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return delegate.encode(rawPassword);
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return checks.record(() -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+}
@@ -0,0 +1,87 @@
+package aidenwaring.intro.cashcard.ratelimit;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+Past the ConcurrencyLimiter's cap, /cashcards requests get 503 Service Unavailable straight away
+instead of queueing for a Tomcat thread or a database connection, so the ones we did accept still finish quickly.
+It sits before authentication, so a flood of requests is shed before we spend a BCrypt check on each.
+A streaming response keeps its permit until it has been fully written.
+GET /cashcards/changes isn't limited here: its streams stay open for a long time but sit idle without
+a thread or a connection, so counting them would soon leave no permits for anything else.
+CashCardChangeStream caps them on its own (cashcard.events.sse.maximum-subscriptions).
+ */
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+    private final ConcurrencyLimiter concurrencyLimiter;
+
+    public ConcurrencyLimitFilter(ConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (!concurrencyLimiter.tryAcquire()) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value());
+            return;
+        }
+        Permit permit = new Permit();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(permit);
+            } else {
+                permit.release();
+            }
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return !path.startsWith("/cashcards") || path.equals("/cashcards/changes");
+    }
+
+    // Released exactly once, whichever way the request ends
+    private class Permit implements AsyncListener {
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                concurrencyLimiter.release();
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package aidenwaring.intro.cashcard.ratelimit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.Semaphore;
+
+/*
+A global cap on how many /cashcards requests are being worked on at once, across all owners (see ConcurrencyLimitFilter).
+Keep it a little above the connection pool size: most requests only hold a connection for part of their time.
+ */
+public class ConcurrencyLimiter implements MeterBinder {
+    private final int maxConcurrentRequests;
+    private final Semaphore permits;
+    private Counter rejections;
+
+    public ConcurrencyLimiter(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.permits = new Semaphore(maxConcurrentRequests);
+    }
+
+    // Never waits: either there's a permit right now, or the request is rejected
+    public boolean tryAcquire() {
+        if (permits.tryAcquire()) {
+            return true;
+        }
+        if (rejections != null) {
+            rejections.increment();
+        }
+        return false;
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    // Publishes cashcard.admission.rejections tagged with reason=concurrency, and the in-flight request count
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        rejections = Counter.builder("cashcard.admission.rejections")
+                .description("Requests turned away before reaching a controller")
+                .tag("reason", "concurrency")
+                .tag("endpoint", "all")
+                .register(registry);
+        Gauge.builder("cashcard.admission.in.flight", permits, p -> maxConcurrentRequests - p.availablePermits())
+                .description("Requests currently holding a concurrency permit")
+                .register(registry);
+    }
+}
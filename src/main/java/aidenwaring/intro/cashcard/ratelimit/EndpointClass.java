@@ -0,0 +1,26 @@
+package aidenwaring.intro.cashcard.ratelimit;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/*
+Endpoints grouped by how much they cost us, each with its own rate limit per owner.
+ */
+public enum EndpointClass {
+    // Single-card and paged reads, mostly served from the caches or an index
+    READ,
+    // Single-card creates, updates and deletes
+    WRITE,
+    // /cashcards/batch and /cashcards/export, which can touch every card an owner has
+    BULK;
+
+    public static EndpointClass of(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (path.startsWith("/cashcards/batch") || path.startsWith("/cashcards/export")) {
+            return BULK;
+        }
+        return switch (request.getMethod()) {
+            case "GET", "HEAD", "OPTIONS" -> READ;
+            default -> WRITE;
+        };
+    }
+}
@@ -0,0 +1,83 @@
+package aidenwaring.intro.cashcard.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/*
+One TokenBucket per (owner, endpoint class), so a noisy owner only ever uses up their own tokens.
+
+The buckets live in a Caffeine cache: lookups don't lock, and owners that stop sending requests are dropped
+after a while instead of growing the map forever (a returning owner simply starts with a full bucket).
+ */
+public class OwnerRateLimiter implements MeterBinder {
+    private final Map<EndpointClass, Limit> limits;
+    private final Cache<OwnerEndpoint, TokenBucket> buckets;
+    private final Map<EndpointClass, Counter> rejections = new EnumMap<>(EndpointClass.class);
+
+    public OwnerRateLimiter(Map<EndpointClass, Limit> limits, long maximumOwners) {
+        this.limits = new EnumMap<>(limits);
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maximumOwners * EndpointClass.values().length)
+                .expireAfterAccess(Duration.ofMinutes(10))
+                .build();
+    }
+
+    // Returns 0 if the request may go ahead, otherwise how many nanoseconds the owner should wait
+    public long tryAcquire(String owner, EndpointClass endpointClass) {
+        long now = System.nanoTime();
+        Limit limit = limits.get(endpointClass);
+        TokenBucket bucket = buckets.get(new OwnerEndpoint(owner, endpointClass),
+                key -> new TokenBucket(limit.perSecond(), limit.burst(), now));
+        long wait = bucket.tryAcquire(now);
+        if (wait > 0) {
+            Counter counter = rejections.get(endpointClass);
+            if (counter != null) {
+                counter.increment();
+            }
+        }
+        return wait;
+    }
+
+    // Publishes cashcard.admission.rejections tagged with reason=rate-limit and the endpoint class
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (EndpointClass endpointClass : EndpointClass.values()) {
+            rejections.put(endpointClass, Counter.builder("cashcard.admission.rejections")
+                    .description("Requests turned away before reaching a controller")
+                    .tag("reason", "rate-limit")
+                    .tag("endpoint", endpointClass.name().toLowerCase())
+                    .register(registry));
+        }
+    }
+
+    /*
+        Checked here, so a limit TokenBucket can't enforce fails the application at startup:
+        at most one token per nanosecond, at least one every 292 years (or burst * nanos per token overflows a long),
+        and room for at least one request.
+     */
+    public record Limit(double perSecond, int burst) {
+        private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+        public Limit {
+            if (!(perSecond > 0 && perSecond <= NANOS_PER_SECOND)) {
+                throw new IllegalArgumentException("A rate limit needs between 0 and 1e9 requests per second, not " + perSecond);
+            }
+            if (burst < 1) {
+                throw new IllegalArgumentException("A rate limit needs a burst of at least 1, not " + burst);
+            }
+            if (burst / perSecond * NANOS_PER_SECOND >= Long.MAX_VALUE) {
+                throw new IllegalArgumentException("A burst of " + burst + " at " + perSecond + " per second takes too long to refill");
+            }
+        }
+    }
+
+    private record OwnerEndpoint(String owner, EndpointClass endpointClass) {
+    }
+}
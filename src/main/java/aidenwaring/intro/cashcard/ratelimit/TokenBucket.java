@@ -0,0 +1,41 @@
+package aidenwaring.intro.cashcard.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+A token bucket that refills at a steady rate and holds at most `burst` tokens, without a lock.
+
+Rather than a token count plus a last-refill time (two values that have to change together),
+it keeps a single number: the time at which the bucket will be full again (the "generic cell rate algorithm").
+Taking a token pushes that time one refill interval further; if it would end up more than `burst` intervals
+in the future, the bucket is empty. One compareAndSet per request, and a failed one just means another
+request took a token at the same moment, so we retry with the new value.
+ */
+public class TokenBucket {
+    private final long nanosPerToken;
+    private final long burstNanos;
+    private final AtomicLong fullAt;
+
+    public TokenBucket(double tokensPerSecond, int burst, long nowNanos) {
+        this.nanosPerToken = (long) (1_000_000_000L / tokensPerSecond);
+        // OwnerRateLimiter.Limit keeps both in range, but an overflow here would silently disable the limit
+        this.burstNanos = Math.multiplyExact(nanosPerToken, burst);
+        this.fullAt = new AtomicLong(nowNanos);
+    }
+
+    // Returns 0 if a token was taken, otherwise how many nanoseconds until the next one is available
+    public long tryAcquire(long nowNanos) {
+        while (true) {
+            long current = fullAt.get();
+            // A bucket that has been full for a while doesn't bank the extra time
+            long next = (current - nowNanos < 0 ? nowNanos : current) + nanosPerToken;
+            long wait = next - burstNanos - nowNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+}
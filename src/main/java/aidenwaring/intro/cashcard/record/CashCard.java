@@ -1,7 +1,24 @@
 package aidenwaring.intro.cashcard.record;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.PersistenceCreator;
+import org.springframework.data.annotation.Version;
 
 // Id annotation tells our CashCardRepository that the Long id param is the id
-public record CashCard(@Id Long id, Double amount, String owner) {
+// The amount is stored as a whole number of cents (see Money), so it's exact and never a rounded Double
+/*
+The version goes up by one with every update, and Spring Data only updates the row if it still has the version we read.
+It isn't part of the JSON: clients see it as the card's ETag instead.
+ */
+public record CashCard(@Id Long id, Money amount, String owner, @Version @JsonIgnore Long version) {
+
+    @PersistenceCreator
+    public CashCard {
+    }
+
+    // A card whose version we don't know (or don't care about), like one sent by a client
+    public CashCard(Long id, Money amount, String owner) {
+        this(id, amount, owner, null);
+    }
 }
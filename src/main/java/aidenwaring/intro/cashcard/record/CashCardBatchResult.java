@@ -0,0 +1,16 @@
+package aidenwaring.intro.cashcard.record;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/*
+The outcome of one item in a batch request: its position in the request body,
+the id of the card it touched (if any) and the HTTP status the single-item endpoint would have returned.
+error is only set on an item that couldn't be read, which is always the last result of its batch.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record CashCardBatchResult(int index, Long id, int status, String error) {
+
+    public CashCardBatchResult(int index, Long id, int status) {
+        this(index, id, status, null);
+    }
+}
@@ -0,0 +1,41 @@
+package aidenwaring.intro.cashcard.record;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+
+/*
+Reads a CBOR map into a CashCard, the counterpart of CashCardCborSerializer: no reflection, and the record's
+constructor called directly. Missing or null fields are null, like in JSON; unknown ones (including the version,
+which isn't part of the body) are handled as Jackson is configured to, which in Spring Boot means they're skipped.
+ */
+public class CashCardCborDeserializer extends StdDeserializer<CashCard> {
+    private final MoneyJsonDeserializer moneyDeserializer = new MoneyJsonDeserializer();
+
+    public CashCardCborDeserializer() {
+        super(CashCard.class);
+    }
+
+    @Override
+    public CashCard deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        if (!parser.isExpectedStartObjectToken()) {
+            return (CashCard) context.handleUnexpectedToken(CashCard.class, parser);
+        }
+        Long id = null;
+        Money amount = null;
+        String owner = null;
+        for (String field = parser.nextFieldName(); field != null; field = parser.nextFieldName()) {
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "id" -> id = value == JsonToken.VALUE_NULL ? null : parser.getValueAsLong();
+                case "amount" -> amount = value == JsonToken.VALUE_NULL ? null : moneyDeserializer.deserialize(parser, context);
+                case "owner" -> owner = value == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+                default -> context.handleUnknownProperty(parser, this, CashCard.class, field);
+            }
+        }
+        return new CashCard(id, amount, owner);
+    }
+}
@@ -0,0 +1,35 @@
+package aidenwaring.intro.cashcard.record;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/*
+The position a keyset-paged client has reached: the sort key (amount) and id of the last card it received.
+Clients only ever see it as an opaque, URL-safe string, so we're free to change what's inside later.
+ */
+// The amount is in minor units (cents), like the AMOUNT column
+public record CashCardCursor(long amount, Long id) {
+
+    public static CashCardCursor of(CashCard lastSeen) {
+        return new CashCardCursor(lastSeen.amount().minorUnits(), lastSeen.id());
+    }
+
+    // An empty cursor means "start from the beginning"
+    public static CashCardCursor decode(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        int separator = decoded.indexOf(':');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Malformed cursor: " + cursor);
+        }
+        return new CashCardCursor(Long.parseLong(decoded.substring(0, separator)),
+                Long.valueOf(decoded.substring(separator + 1)));
+    }
+
+    public String encode() {
+        String raw = amount + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,26 @@
+package aidenwaring.intro.cashcard.record;
+
+import java.time.Instant;
+
+/*
+A card that was created, updated or deleted, as published by the outbox (see CashCardEventRelay).
+The offset numbers an owner's events in the order they were committed, so a consumer can resume after the last one it saw.
+It's null until the relay has numbered the event, and so is occurredAt before the event has been stored.
+amount is the card's new amount, and null for DELETED.
+ */
+public record CashCardEvent(Long offset, Type type, Long id, String owner, Money amount, Instant occurredAt) {
+
+    public enum Type {CREATED, UPDATED, DELETED}
+
+    public static CashCardEvent created(Long id, String owner, Money amount) {
+        return new CashCardEvent(null, Type.CREATED, id, owner, amount, null);
+    }
+
+    public static CashCardEvent updated(Long id, String owner, Money amount) {
+        return new CashCardEvent(null, Type.UPDATED, id, owner, amount, null);
+    }
+
+    public static CashCardEvent deleted(Long id, String owner) {
+        return new CashCardEvent(null, Type.DELETED, id, owner, null, null);
+    }
+}
@@ -0,0 +1,9 @@
+package aidenwaring.intro.cashcard.record;
+
+/*
+What GET /cashcards/summary returns: how many cards an owner has, their total, and the smallest and largest amount.
+min and max are null for an owner without cards.
+ */
+public record CashCardSummary(long count, Money sum, Money min, Money max) {
+    public static final CashCardSummary EMPTY = new CashCardSummary(0, Money.ZERO, null, null);
+}
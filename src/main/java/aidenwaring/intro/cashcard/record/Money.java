@@ -0,0 +1,149 @@
+package aidenwaring.intro.cashcard.record;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.math.BigDecimal;
+
+/*
+An amount of money held as a whole number of minor units (cents), e.g. 123.45 is Money(12345).
+
+Unlike a Double, sums and comparisons are exact, and the database stores a plain BIGINT.
+In JSON it's still a decimal number (123.45), written and read by MoneyJsonSerializer/MoneyJsonDeserializer
+straight from and into char buffers, without going through BigDecimal or String on the way.
+In CBOR (see CborConfig) it's an exact decimal fraction rather than a float.
+ */
+@JsonSerialize(using = MoneyJsonSerializer.class)
+@JsonDeserialize(using = MoneyJsonDeserializer.class)
+public record Money(long minorUnits) implements Comparable<Money> {
+    // Long.MIN_VALUE formats as "-92233720368547758.08"
+    static final int MAX_FORMATTED_LENGTH = 21;
+
+    public static final Money ZERO = new Money(0);
+
+    public static Money ofMinorUnits(long minorUnits) {
+        return minorUnits == 0 ? ZERO : new Money(minorUnits);
+    }
+
+    public static Money parse(CharSequence text) {
+        char[] chars = text.toString().toCharArray();
+        return parse(chars, 0, chars.length);
+    }
+
+    /*
+        Parses a decimal number with at most two (non-zero) decimal places, like 123.45, 1.5, -3 or 1.2345e2.
+        Anything with finer precision is rejected rather than silently rounded.
+     */
+    public static Money parse(char[] chars, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        boolean negative = i < end && chars[i] == '-';
+        if (negative || (i < end && chars[i] == '+')) {
+            i++;
+        }
+
+        try {
+            long major = 0;
+            int majorDigits = 0;
+            for (; i < end && isDigit(chars[i]); i++, majorDigits++) {
+                major = Math.addExact(Math.multiplyExact(major, 10), chars[i] - '0');
+            }
+
+            long cents = 0;
+            int fractionDigits = 0;
+            // A third non-zero decimal is only too fine if no exponent follows (1.234e1 is 12.34)
+            boolean finerThanCents = false;
+            if (i < end && chars[i] == '.') {
+                for (i++; i < end && isDigit(chars[i]); i++, fractionDigits++) {
+                    if (fractionDigits < 2) {
+                        cents = cents * 10 + (chars[i] - '0');
+                    } else if (chars[i] != '0') {
+                        finerThanCents = true;
+                    }
+                }
+            }
+
+            if (i < end && (chars[i] == 'e' || chars[i] == 'E')) {
+                return parseWithExponent(chars, offset, length);
+            }
+            if (i != end || majorDigits + fractionDigits == 0 || finerThanCents) {
+                throw invalid(chars, offset, length);
+            }
+            if (fractionDigits == 1) {
+                cents *= 10;
+            }
+            long minorUnits = Math.addExact(Math.multiplyExact(major, 100), cents);
+            return ofMinorUnits(negative ? -minorUnits : minorUnits);
+        } catch (ArithmeticException e) {
+            throw invalid(chars, offset, length);
+        }
+    }
+
+    // Exponent notation is rare enough to not need a fast path
+    private static Money parseWithExponent(char[] chars, int offset, int length) {
+        try {
+            return ofMinorUnits(new BigDecimal(chars, offset, length).movePointRight(2).longValueExact());
+        } catch (ArithmeticException | NumberFormatException e) {
+            throw invalid(chars, offset, length);
+        }
+    }
+
+    /*
+        Writes the amount into the buffer the same way a Double of that value used to be written
+        (1.0, 1.5, 123.45), so the JSON looks exactly as before. Returns the number of chars written.
+     */
+    public int format(char[] buffer) {
+        int position = 0;
+        if (minorUnits < 0) {
+            buffer[position++] = '-';
+        }
+
+        // Work with non-positive numbers, so Long.MIN_VALUE doesn't overflow when we drop the sign
+        long major = minorUnits < 0 ? minorUnits / 100 : -(minorUnits / 100);
+        int cents = (int) Math.abs(minorUnits % 100);
+
+        int digits = 1;
+        for (long rest = major / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = position + digits - 1; i >= position; i--) {
+            buffer[i] = (char) ('0' - major % 10);
+            major /= 10;
+        }
+        position += digits;
+
+        buffer[position++] = '.';
+        buffer[position++] = (char) ('0' + cents / 10);
+        if (cents % 10 != 0) {
+            buffer[position++] = (char) ('0' + cents % 10);
+        }
+        return position;
+    }
+
+    public Money plus(Money other) {
+        return ofMinorUnits(Math.addExact(minorUnits, other.minorUnits));
+    }
+
+    public Money minus(Money other) {
+        return ofMinorUnits(Math.subtractExact(minorUnits, other.minorUnits));
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    @Override
+    public String toString() {
+        char[] buffer = new char[MAX_FORMATTED_LENGTH];
+        return new String(buffer, 0, format(buffer));
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static NumberFormatException invalid(char[] chars, int offset, int length) {
+        return new NumberFormatException("Not a valid amount: " + new String(chars, offset, length));
+    }
+}
@@ -0,0 +1,41 @@
+package aidenwaring.intro.cashcard.record;
+
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.data.convert.WritingConverter;
+
+import java.util.List;
+
+/*
+Tells Spring Data how to store Money: as its number of minor units in a BIGINT column.
+Registered in JdbcConfig.
+ */
+public final class MoneyConverters {
+
+    private MoneyConverters() {
+    }
+
+    public static List<Converter<?, ?>> all() {
+        return List.of(MoneyToLongConverter.INSTANCE, LongToMoneyConverter.INSTANCE);
+    }
+
+    @WritingConverter
+    enum MoneyToLongConverter implements Converter<Money, Long> {
+        INSTANCE;
+
+        @Override
+        public Long convert(Money source) {
+            return source.minorUnits();
+        }
+    }
+
+    @ReadingConverter
+    enum LongToMoneyConverter implements Converter<Long, Money> {
+        INSTANCE;
+
+        @Override
+        public Money convert(Long source) {
+            return Money.ofMinorUnits(source);
+        }
+    }
+}
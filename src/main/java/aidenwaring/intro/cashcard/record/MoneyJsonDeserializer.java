@@ -0,0 +1,60 @@
+package aidenwaring.intro.cashcard.record;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadCapability;
+import com.fasterxml.jackson.core.exc.InputCoercionException;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.exc.InvalidFormatException;
+
+import java.io.IOException;
+
+/*
+Reads a JSON number (123.45, or 5) into Money.
+The parser already holds the number's characters, so we parse those directly
+instead of asking Jackson for a double or BigDecimal first.
+
+Binary formats like CBOR carry numbers as values, not characters, so there a whole number (5) is read as is
+and anything else (a decimal fraction, or a float from a less careful client) through its BigDecimal,
+with the same rule as for JSON: no more than two decimal places.
+ */
+public class MoneyJsonDeserializer extends StdDeserializer<Money> {
+
+    public MoneyJsonDeserializer() {
+        super(Money.class);
+    }
+
+    @Override
+    public Money deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        // Only binary formats read floating point numbers exactly
+        if (parser.getReadCapabilities().isEnabled(StreamReadCapability.EXACT_FLOATS)) {
+            return deserializeBinary(parser, context);
+        }
+        return switch (parser.currentToken()) {
+            case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> {
+                try {
+                    yield Money.parse(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                } catch (NumberFormatException e) {
+                    throw InvalidFormatException.from(parser, e.getMessage(), parser.getText(), Money.class);
+                }
+            }
+            default -> (Money) context.handleUnexpectedToken(Money.class, parser);
+        };
+    }
+
+    private Money deserializeBinary(JsonParser parser, DeserializationContext context) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token != JsonToken.VALUE_NUMBER_INT && token != JsonToken.VALUE_NUMBER_FLOAT) {
+            return (Money) context.handleUnexpectedToken(Money.class, parser);
+        }
+        try {
+            if (token == JsonToken.VALUE_NUMBER_INT) {
+                return Money.ofMinorUnits(Math.multiplyExact(parser.getLongValue(), 100));
+            }
+            return Money.ofMinorUnits(parser.getDecimalValue().movePointRight(2).longValueExact());
+        } catch (ArithmeticException | NumberFormatException | InputCoercionException e) {
+            throw InvalidFormatException.from(parser, "Not a valid amount: " + parser.getText(), parser.getText(), Money.class);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package aidenwaring.intro.cashcard.record;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/*
+Writes Money as a JSON number (123.45), formatted straight into a small char buffer.
+The generator copies the chars out before writeNumber() returns, so each thread reuses one buffer.
+Binary formats like CBOR can't take a number as text, so they get the exact decimal instead
+(in CBOR a decimal fraction: 12345 times 10 to the -2).
+ */
+public class MoneyJsonSerializer extends StdSerializer<Money> {
+    private static final ThreadLocal<char[]> buffers = ThreadLocal.withInitial(() -> new char[Money.MAX_FORMATTED_LENGTH]);
+
+    public MoneyJsonSerializer() {
+        super(Money.class);
+    }
+
+    @Override
+    public void serialize(Money value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        if (!generator.canWriteFormattedNumbers()) {
+            generator.writeNumber(BigDecimal.valueOf(value.minorUnits(), 2));
+            return;
+        }
+        char[] buffer = buffers.get();
+        generator.writeNumber(buffer, 0, value.format(buffer));
+    }
+}
@@ -0,0 +1,123 @@
+package aidenwaring.intro.cashcard.repository;
+
+import aidenwaring.intro.cashcard.record.CashCard;
+import aidenwaring.intro.cashcard.record.Money;
+import aidenwaring.intro.cashcard.sharding.ShardedIdGenerator;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+Set-based and JDBC-batched counterparts of the CashCardRepository methods, for the /cashcards/batch endpoints.
+
+CrudRepository.saveAll() still sends one INSERT/UPDATE per card, so here we talk to JDBC directly:
+one PreparedStatement with many addBatch() calls per chunk, and one query to check ownership of a whole chunk.
+All methods join the caller's transaction.
+ */
+@Repository
+@Timed("cashcard.repository")
+public class CashCardBatchRepository {
+    private static final String INSERT = "INSERT INTO cash_card (amount, owner) VALUES (?, ?)";
+    private static final String INSERT_WITH_ID = "INSERT INTO cash_card (id, amount, owner) VALUES (?, ?, ?)";
+    private static final String UPDATE = "UPDATE cash_card SET amount = ?, version = version + 1 WHERE id = ? AND owner = ?";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    // Only there when cashcard.sharding.enabled=true; then ids can't come from each shard's own identity column
+    private final ShardedIdGenerator idGenerator;
+
+    public CashCardBatchRepository(NamedParameterJdbcTemplate jdbcTemplate, ObjectProvider<ShardedIdGenerator> idGenerator) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.idGenerator = idGenerator.getIfAvailable();
+    }
+
+    // Returns the generated ids, in the same order as the cards passed in
+    public List<Long> insertAll(String owner, List<CashCard> cashCards) {
+        if (idGenerator != null) {
+            List<Long> ids = idGenerator.nextIds(cashCards.size());
+            jdbcTemplate.getJdbcOperations().batchUpdate(INSERT_WITH_ID, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement insert, int i) throws SQLException {
+                    insert.setLong(1, ids.get(i));
+                    insert.setLong(2, cashCards.get(i).amount().minorUnits());
+                    insert.setString(3, owner);
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return cashCards.size();
+                }
+            });
+            return ids;
+        }
+        return jdbcTemplate.getJdbcOperations().execute((ConnectionCallback<List<Long>>) connection -> {
+            try (PreparedStatement insert = connection.prepareStatement(INSERT, new String[]{"ID"})) {
+                for (CashCard cashCard : cashCards) {
+                    insert.setLong(1, cashCard.amount().minorUnits());
+                    insert.setString(2, owner);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+
+                List<Long> ids = new ArrayList<>(cashCards.size());
+                try (ResultSet generatedKeys = insert.getGeneratedKeys()) {
+                    while (generatedKeys.next()) {
+                        ids.add(generatedKeys.getLong(1));
+                    }
+                }
+                return ids;
+            }
+        });
+    }
+
+    /*
+        Which of these ids belong to the owner, and their current amounts, in a single query
+        rather than one existsByIdAndOwner() per id. The rows stay locked until the transaction ends,
+        so the amounts are still current when the owner's summary is adjusted by them.
+     */
+    public Map<Long, Money> findOwnedAmounts(String owner, Collection<Long> ids) {
+        Map<Long, Money> owned = new HashMap<>();
+        if (ids.isEmpty()) {
+            return owned;
+        }
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("owner", owner)
+                .addValue("ids", ids);
+        jdbcTemplate.query("SELECT id, amount FROM cash_card WHERE owner = :owner AND id IN (:ids) FOR UPDATE",
+                parameters, (RowCallbackHandler) row ->
+                        owned.put(row.getLong("id"), Money.ofMinorUnits(row.getLong("amount"))));
+        return owned;
+    }
+
+    // The owner stays in the WHERE clause, so a card can never be updated on behalf of someone else
+    public void updateAll(String owner, List<CashCard> cashCards) {
+        jdbcTemplate.getJdbcOperations().batchUpdate(UPDATE, cashCards, cashCards.size(), (update, cashCard) -> {
+            update.setLong(1, cashCard.amount().minorUnits());
+            update.setLong(2, cashCard.id());
+            update.setString(3, owner);
+        });
+    }
+
+    public void deleteAll(String owner, Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("owner", owner)
+                .addValue("ids", ids);
+        jdbcTemplate.update("DELETE FROM cash_card WHERE owner = :owner AND id IN (:ids)", parameters);
+    }
+}
@@ -0,0 +1,120 @@
+package aidenwaring.intro.cashcard.repository;
+
+import aidenwaring.intro.cashcard.record.CashCardEvent;
+import aidenwaring.intro.cashcard.record.Money;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.List;
+
+/*
+The transactional outbox: cash_card_event rows are inserted in the same transaction as the change they describe,
+so an event exists if and only if its change was committed.
+
+Rows are inserted in id order, but transactions don't commit in that order: a consumer reading by id could
+pass over a row that commits later. So the relay numbers rows (SEQ) as it finds them committed,
+under a lock on its cash_card_event_relay row, and consumers only ever read numbered rows by SEQ.
+ */
+@Repository
+@Timed("cashcard.repository")
+public class CashCardEventRepository {
+    private static final String SELECT = "SELECT seq, type, card_id, owner, amount, occurred_at FROM cash_card_event ";
+
+    private static final RowMapper<CashCardEvent> EVENT = (row, rowNum) -> {
+        long minorUnits = row.getLong("amount");
+        Money amount = row.wasNull() ? null : Money.ofMinorUnits(minorUnits);
+        return new CashCardEvent(row.getLong("seq"), CashCardEvent.Type.valueOf(row.getString("type")),
+                row.getLong("card_id"), row.getString("owner"), amount, row.getTimestamp("occurred_at").toInstant());
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public CashCardEventRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // Joins the caller's transaction, which is the point
+    public void append(List<CashCardEvent> events) {
+        jdbcTemplate.batchUpdate("INSERT INTO cash_card_event (type, card_id, owner, amount) VALUES (?, ?, ?, ?)",
+                events, events.size(), (insert, event) -> {
+                    insert.setString(1, event.type().name());
+                    insert.setLong(2, event.id());
+                    insert.setString(3, event.owner());
+                    if (event.amount() == null) {
+                        insert.setNull(4, Types.BIGINT);
+                    } else {
+                        insert.setLong(4, event.amount().minorUnits());
+                    }
+                });
+    }
+
+    /*
+        Numbers up to `limit` committed rows that haven't been numbered yet, continuing after the last SEQ handed out,
+        and returns how many it numbered. Must run in a transaction: the relay row stays locked until it ends,
+        so two instances' relays take turns.
+     */
+    public int numberNew(int limit) {
+        long last = jdbcTemplate.queryForObject(
+                "SELECT position FROM cash_card_event_relay WHERE name = 'numbered' FOR UPDATE", Long.class);
+        List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT id FROM cash_card_event WHERE seq IS NULL ORDER BY id LIMIT ?", Long.class, limit);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        jdbcTemplate.batchUpdate("UPDATE cash_card_event SET seq = ? WHERE id = ?", new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement update, int i) throws SQLException {
+                update.setLong(1, last + 1 + i);
+                update.setLong(2, ids.get(i));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return ids.size();
+            }
+        });
+        jdbcTemplate.update("UPDATE cash_card_event_relay SET position = ? WHERE name = 'numbered'", last + ids.size());
+        return ids.size();
+    }
+
+    public long lastNumbered() {
+        return position("numbered");
+    }
+
+    // Events up to this SEQ have been pruned, so a consumer that's further behind can't resume
+    public long prunedThrough() {
+        return position("pruned");
+    }
+
+    public List<CashCardEvent> findAfter(long seq, int limit) {
+        return jdbcTemplate.query(SELECT + "WHERE seq > ? ORDER BY seq LIMIT ?", EVENT, seq, limit);
+    }
+
+    public List<CashCardEvent> findByOwnerAfter(String owner, long seq, int limit) {
+        return jdbcTemplate.query(SELECT + "WHERE owner = ? AND seq > ? ORDER BY seq LIMIT ?", EVENT, owner, seq, limit);
+    }
+
+    // Deletes the numbered events that occurred before `before`, and returns how many. Must run in a transaction
+    public int pruneBefore(Instant before) {
+        Long through = jdbcTemplate.queryForObject(
+                "SELECT MAX(seq) FROM cash_card_event WHERE seq IS NOT NULL AND occurred_at < ?", Long.class,
+                Timestamp.from(before));
+        if (through == null) {
+            return 0;
+        }
+        jdbcTemplate.update("UPDATE cash_card_event_relay SET position = GREATEST(position, ?) WHERE name = 'pruned'", through);
+        return jdbcTemplate.update("DELETE FROM cash_card_event WHERE seq <= ?", through);
+    }
+
+    private long position(String name) {
+        return jdbcTemplate.queryForObject("SELECT position FROM cash_card_event_relay WHERE name = ?", Long.class, name);
+    }
+}
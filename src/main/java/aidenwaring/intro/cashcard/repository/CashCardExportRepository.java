@@ -0,0 +1,47 @@
+package aidenwaring.intro.cashcard.repository;
+
+import aidenwaring.intro.cashcard.record.CashCard;
+import aidenwaring.intro.cashcard.record.Money;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.function.Consumer;
+
+/*
+Reads all of an owner's cards as a stream, for GET /cashcards/export.
+
+Unlike findByOwner(), nothing is collected into a List: each row is handed to the consumer as soon as
+it's read from a forward-only, read-only cursor, and the driver only fetches `fetchSize` rows at a time.
+Memory use stays the same whether the owner has ten cards or ten million.
+ */
+@Repository
+@Timed("cashcard.repository")
+public class CashCardExportRepository {
+    private static final String SELECT_BY_OWNER =
+            "SELECT id, amount, owner FROM cash_card WHERE owner = ? ORDER BY amount, id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int fetchSize;
+
+    public CashCardExportRepository(JdbcTemplate jdbcTemplate, @Value("${cashcard.export.fetch-size}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.fetchSize = fetchSize;
+    }
+
+    public void forEachByOwner(String owner, Consumer<CashCard> consumer) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement select = connection.prepareStatement(SELECT_BY_OWNER,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            select.setFetchSize(fetchSize);
+            select.setString(1, owner);
+            return select;
+        }, (RowCallbackHandler) row ->
+                consumer.accept(new CashCard(row.getLong("id"), Money.ofMinorUnits(row.getLong("amount")),
+                        row.getString("owner"))));
+    }
+}
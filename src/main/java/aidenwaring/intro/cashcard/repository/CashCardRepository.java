@@ -1,25 +1,74 @@
 package aidenwaring.intro.cashcard.repository;
 
 import aidenwaring.intro.cashcard.record.CashCard;
-import org.springframework.data.domain.Page;
+import aidenwaring.intro.cashcard.record.CashCardCursor;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.jdbc.repository.query.Query;
+import org.springframework.data.relational.core.sql.LockMode;
+import org.springframework.data.relational.repository.Lock;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
 
 // We need to tell CrudRepository which data object the CashCardRepository should manage
 // The 'domain type' of this repository is 'CashCard'
 
 // CrudRepository<Object, Id>
 // Need to indicate Id in the record
+// Reads are read-only transactions, which go to a replica when there is one (see ReplicaRoutingDataSource)
 public interface CashCardRepository extends CrudRepository<CashCard, Long>, PagingAndSortingRepository<CashCard, Long> {
+    @Transactional(readOnly = true)
     CashCard findByIdAndOwner(Long id, String owner);
-    Page<CashCard> findByOwner(String owner, PageRequest pageRequest);
+
+    // The same lookup, but the row stays locked until the transaction ends, so its amount can't change under a write
+    @Lock(LockMode.PESSIMISTIC_WRITE)
+    CashCard findForUpdateByIdAndOwner(Long id, String owner);
+    /*
+        A Slice (rather than a Page) only fetches one extra row to know whether there's a next page,
+        so Spring Data doesn't have to run a second SELECT COUNT(*) query we'd never use.
+        A client that wants the total asks for it (?withTotal=true), and gets the count from the owner's summary row.
+        The (owner, amount, id, version) index covers every column, so the page itself never touches the table.
+     */
+    @Transactional(readOnly = true)
+    Slice<CashCard> findByOwner(String owner, PageRequest pageRequest);
 
     /*
         Why not just use the findByIdAndOwner() method and check whether it returns null?
         Such a call would return extra information (the content of the Cash Card retrieved),
         so we'd like to avoid it as to not introduce extra complexity.
      */
+    @Transactional(readOnly = true)
     boolean existsByIdAndOwner(Long id, String owner);
 
+    /*
+        Keyset (a.k.a. seek) pagination.
+        Instead of skipping OFFSET rows, we continue from the last (amount, id) the client has seen,
+        which the (owner, amount, id) index can jump straight to. Deep pages cost the same as the first one.
+        The id is the tie-breaker, so cards with equal amounts are never skipped or repeated.
+     */
+    @Transactional(readOnly = true)
+    @Query("SELECT * FROM cash_card WHERE owner = :owner ORDER BY amount, id LIMIT :limit")
+    List<CashCard> findSeekStart(@Param("owner") String owner, @Param("limit") int limit);
+
+    @Transactional(readOnly = true)
+    @Query("""
+            SELECT * FROM cash_card
+            WHERE owner = :owner AND amount >= :amount AND (amount > :amount OR id > :id)
+            ORDER BY amount, id LIMIT :limit""")
+    List<CashCard> findSeekAfter(@Param("owner") String owner, @Param("amount") long amount,
+                                 @Param("id") Long id, @Param("limit") int limit);
+
+    // Fetches one row more than asked for, only to find out whether there's another slice after this one
+    default Slice<CashCard> findByOwnerAfter(String owner, CashCardCursor after, int size) {
+        List<CashCard> cashCards = after == null
+                ? findSeekStart(owner, size + 1)
+                : findSeekAfter(owner, after.amount(), after.id(), size + 1);
+        boolean hasNext = cashCards.size() > size;
+        return new SliceImpl<>(hasNext ? cashCards.subList(0, size) : cashCards, PageRequest.of(0, size), hasNext);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,161 @@
+package aidenwaring.intro.cashcard.repository;
+
+import aidenwaring.intro.cashcard.record.CashCardSummary;
+import aidenwaring.intro.cashcard.record.Money;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+One row per owner in cash_card_summary with their card count, total, min and max amount,
+so GET /cashcards/summary is a primary key lookup no matter how many cards the owner has.
+
+The row is kept up to date by the code that writes cash_card, in the same transaction and after the cards were written:
+added() for new cards, removed() for deleted ones, and both (old amounts removed, new ones added) for updates.
+Count and total are simple deltas. A new min or max is only looked up again when the card holding it goes away,
+and then it's the first entry of the (owner, amount, id) index rather than a scan.
+Min and max are NULL while the owner has no cards. LEAST and GREATEST of a NULL are NULL on some databases
+(MySQL, Oracle) and the other value on others (H2, PostgreSQL), so the SQL never hands them one.
+Updating the row also locks it, which serializes concurrent writers of the same owner's summary.
+ */
+@Repository
+@Timed("cashcard.repository")
+public class CashCardSummaryRepository {
+    private static final String ADD = """
+            UPDATE cash_card_summary
+            SET card_count = card_count + :count, total = total + :total,
+                min_amount = LEAST(COALESCE(min_amount, :lowest), :lowest),
+                max_amount = GREATEST(COALESCE(max_amount, :highest), :highest)
+            WHERE owner = :owner""";
+    private static final String INSERT = """
+            INSERT INTO cash_card_summary (owner, card_count, total, min_amount, max_amount)
+            VALUES (:owner, :count, :total, :lowest, :highest)""";
+    private static final String REMOVE = """
+            UPDATE cash_card_summary SET card_count = card_count - :count, total = total - :total
+            WHERE owner = :owner""";
+    private static final String REFRESH_MIN = """
+            UPDATE cash_card_summary
+            SET min_amount = (SELECT amount FROM cash_card WHERE owner = :owner ORDER BY amount LIMIT 1)
+            WHERE owner = :owner AND min_amount >= :lowest""";
+    private static final String REFRESH_MAX = """
+            UPDATE cash_card_summary
+            SET max_amount = (SELECT amount FROM cash_card WHERE owner = :owner ORDER BY amount DESC LIMIT 1)
+            WHERE owner = :owner AND max_amount <= :highest""";
+    private static final String REBUILD = """
+            UPDATE cash_card_summary SET
+                card_count = (SELECT COUNT(*) FROM cash_card WHERE owner = :owner),
+                total = (SELECT COALESCE(SUM(amount), 0) FROM cash_card WHERE owner = :owner),
+                min_amount = (SELECT MIN(amount) FROM cash_card WHERE owner = :owner),
+                max_amount = (SELECT MAX(amount) FROM cash_card WHERE owner = :owner)
+            WHERE owner = :owner""";
+
+    private static final RowMapper<CashCardSummary> SUMMARY = (row, rowNum) -> new CashCardSummary(
+            row.getLong("card_count"),
+            Money.ofMinorUnits(row.getLong("total")),
+            money(row.getObject("min_amount", Long.class)),
+            money(row.getObject("max_amount", Long.class)));
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public CashCardSummaryRepository(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public CashCardSummary findByOwner(String owner) {
+        List<CashCardSummary> summary = jdbcTemplate.query(
+                "SELECT * FROM cash_card_summary WHERE owner = :owner", Map.of("owner", owner), SUMMARY);
+        return summary.isEmpty() ? CashCardSummary.EMPTY : summary.get(0);
+    }
+
+    public void added(String owner, Collection<Money> amounts) {
+        if (amounts.isEmpty()) {
+            return;
+        }
+        MapSqlParameterSource parameters = parameters(owner, amounts);
+        if (jdbcTemplate.update(ADD, parameters) == 0) {
+            try {
+                jdbcTemplate.update(INSERT, parameters);
+            } catch (DuplicateKeyException e) {
+                // Someone else just created the owner's row
+                jdbcTemplate.update(ADD, parameters);
+            }
+        }
+    }
+
+    public void removed(String owner, Collection<Money> amounts) {
+        if (amounts.isEmpty()) {
+            return;
+        }
+        MapSqlParameterSource parameters = parameters(owner, amounts);
+        jdbcTemplate.update(REMOVE, parameters);
+        jdbcTemplate.update(REFRESH_MIN, parameters);
+        jdbcTemplate.update(REFRESH_MAX, parameters);
+    }
+
+    /*
+        Recomputes the owner's row from cash_card. Used to repair drift, so it isn't O(1) like the methods above.
+        Locking the row first means any writer that was holding it has committed before we count.
+     */
+    public void rebuild(String owner) {
+        Map<String, String> parameters = Map.of("owner", owner);
+        if (jdbcTemplate.queryForList("SELECT owner FROM cash_card_summary WHERE owner = :owner FOR UPDATE",
+                parameters, String.class).isEmpty()) {
+            try {
+                jdbcTemplate.update("INSERT INTO cash_card_summary (owner) VALUES (:owner)", parameters);
+            } catch (DuplicateKeyException e) {
+                jdbcTemplate.queryForList("SELECT owner FROM cash_card_summary WHERE owner = :owner FOR UPDATE",
+                        parameters, String.class);
+            }
+        }
+        jdbcTemplate.update(REBUILD, parameters);
+    }
+
+    // What the summaries should be, computed with a full scan of cash_card
+    public Map<String, CashCardSummary> computeAll() {
+        return byOwner("""
+                SELECT owner, COUNT(*) AS card_count, SUM(amount) AS total,
+                       MIN(amount) AS min_amount, MAX(amount) AS max_amount
+                FROM cash_card GROUP BY owner""");
+    }
+
+    public Map<String, CashCardSummary> findAll() {
+        return byOwner("SELECT * FROM cash_card_summary");
+    }
+
+    private Map<String, CashCardSummary> byOwner(String sql) {
+        Map<String, CashCardSummary> summaries = new HashMap<>();
+        jdbcTemplate.query(sql, Map.of(), (RowCallbackHandler) row ->
+                summaries.put(row.getString("owner"), SUMMARY.mapRow(row, row.getRow())));
+        return summaries;
+    }
+
+    private static MapSqlParameterSource parameters(String owner, Collection<Money> amounts) {
+        long total = 0;
+        long lowest = Long.MAX_VALUE;
+        long highest = Long.MIN_VALUE;
+        for (Money amount : amounts) {
+            total = Math.addExact(total, amount.minorUnits());
+            lowest = Math.min(lowest, amount.minorUnits());
+            highest = Math.max(highest, amount.minorUnits());
+        }
+        return new MapSqlParameterSource()
+                .addValue("owner", owner)
+                .addValue("count", amounts.size())
+                .addValue("total", total)
+                .addValue("lowest", lowest)
+                .addValue("highest", highest);
+    }
+
+    private static Money money(Long minorUnits) {
+        return minorUnits == null ? null : Money.ofMinorUnits(minorUnits);
+    }
+}
@@ -0,0 +1,62 @@
+package aidenwaring.intro.cashcard.repository;
+
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.function.Consumer;
+
+/*
+Reads the card owners' logins from cash_card_user, for the JdbcUserIndex.
+
+Like the export, rows are streamed off a forward-only cursor `fetchSize` at a time,
+so loading a million users never holds more than one batch of rows (plus the index itself) in memory.
+ */
+@Repository
+@Timed("cashcard.repository")
+public class CashCardUserRepository {
+    private static final String SELECT_ENABLED =
+            "SELECT username, password, roles, enabled, updated_at FROM cash_card_user WHERE enabled";
+    // Disabled users are read too, so the index can drop them
+    private static final String SELECT_CHANGED_SINCE =
+            "SELECT username, password, roles, enabled, updated_at FROM cash_card_user WHERE updated_at >= ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int fetchSize;
+
+    public CashCardUserRepository(JdbcTemplate jdbcTemplate, @Value("${cashcard.users.fetch-size}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.fetchSize = fetchSize;
+    }
+
+    public void forEachEnabled(Consumer<UserRow> consumer) {
+        forEach(SELECT_ENABLED, null, consumer);
+    }
+
+    public void forEachChangedSince(Timestamp since, Consumer<UserRow> consumer) {
+        forEach(SELECT_CHANGED_SINCE, since, consumer);
+    }
+
+    private void forEach(String sql, Timestamp since, Consumer<UserRow> consumer) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement select = connection.prepareStatement(sql,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            select.setFetchSize(fetchSize);
+            if (since != null) {
+                select.setTimestamp(1, since);
+            }
+            return select;
+        }, (RowCallbackHandler) row ->
+                consumer.accept(new UserRow(row.getString("username"), row.getString("password"),
+                        row.getString("roles"), row.getBoolean("enabled"), row.getTimestamp("updated_at"))));
+    }
+
+    // The password is the stored BCrypt hash, and roles are comma-separated without the ROLE_ prefix
+    public record UserRow(String username, String password, String roles, boolean enabled, Timestamp updatedAt) {
+    }
+}
@@ -0,0 +1,128 @@
+package aidenwaring.intro.cashcard.repository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/*
+An append-only log of card updates in a memory-mapped file of fixed size, for the write-behind mode of PUT.
+
+Appending is a few writes into the mapped memory, no system call. Once written, an entry is in the OS page cache,
+so it survives the JVM crashing or being killed; with force=true every entry is also flushed to the disk itself,
+which survives the machine going down but costs a disk write per update.
+
+File layout: a header (magic, generation) followed by entries of
+[length][generation, id, amount in minor units, owner][CRC32C of the bracketed part].
+The log is emptied by starting a new generation rather than by erasing the file, so entries left behind
+from an older generation are recognised by their generation number and ignored, like torn or corrupt ones.
+Not thread-safe: the caller serializes appends.
+ */
+public class WriteBehindLog implements Closeable {
+    // No entries to replay
+    public static final long EMPTY = 0;
+
+    private static final int MAGIC = 0x43434C47;
+    private static final int HEADER_SIZE = 16;
+    private static final int FIXED_PAYLOAD_SIZE = 3 * Long.BYTES;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final boolean force;
+    private long generation;
+    private int position = HEADER_SIZE;
+
+    public WriteBehindLog(Path file, int size, boolean force) throws IOException {
+        this.channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        this.force = force;
+        this.generation = buffer.getInt(0) == MAGIC ? buffer.getLong(4) : EMPTY;
+    }
+
+    public long generation() {
+        return generation;
+    }
+
+    // The entries of the current generation in the order they were appended, up to the first torn or stale one
+    public List<Entry> read() {
+        List<Entry> entries = new ArrayList<>();
+        if (generation == EMPTY) {
+            return entries;
+        }
+        CRC32C crc = new CRC32C();
+        int offset = HEADER_SIZE;
+        while (offset + Integer.BYTES <= buffer.capacity()) {
+            int length = buffer.getInt(offset);
+            if (length < FIXED_PAYLOAD_SIZE || offset + 2 * Integer.BYTES + length > buffer.capacity()) {
+                break;
+            }
+            ByteBuffer payload = buffer.slice(offset + Integer.BYTES, length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != buffer.getInt(offset + Integer.BYTES + length)
+                    || payload.getLong(0) != generation) {
+                break;
+            }
+            byte[] owner = new byte[length - FIXED_PAYLOAD_SIZE];
+            payload.get(FIXED_PAYLOAD_SIZE, owner);
+            entries.add(new Entry(payload.getLong(8), payload.getLong(16), new String(owner, StandardCharsets.UTF_8)));
+            offset += 2 * Integer.BYTES + length;
+        }
+        return entries;
+    }
+
+    // Returns false, without writing anything, if the entry doesn't fit in what's left of the file
+    public boolean append(long id, long amount, String owner) {
+        byte[] ownerBytes = owner.getBytes(StandardCharsets.UTF_8);
+        int length = FIXED_PAYLOAD_SIZE + ownerBytes.length;
+        int end = position + 2 * Integer.BYTES + length;
+        if (end + Integer.BYTES > buffer.capacity()) {
+            return false;
+        }
+        int payloadStart = position + Integer.BYTES;
+        buffer.putLong(payloadStart, generation);
+        buffer.putLong(payloadStart + 8, id);
+        buffer.putLong(payloadStart + 16, amount);
+        buffer.put(payloadStart + FIXED_PAYLOAD_SIZE, ownerBytes);
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(payloadStart, length));
+        buffer.putInt(payloadStart + length, (int) crc.getValue());
+        buffer.putInt(end, 0);
+        // The length goes in last: until then, a reader sees the end of the log here
+        buffer.putInt(position, length);
+        if (force) {
+            buffer.force(position, end + Integer.BYTES - position);
+        }
+        position = end;
+        return true;
+    }
+
+    // Empties the log. New entries are appended under the given generation (EMPTY for a log that's not in use)
+    public void reset(long generation) {
+        buffer.putInt(HEADER_SIZE, 0);
+        buffer.putInt(0, MAGIC);
+        buffer.putLong(4, generation);
+        if (force) {
+            buffer.force(0, HEADER_SIZE + Integer.BYTES);
+        }
+        this.generation = generation;
+        this.position = HEADER_SIZE;
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    public record Entry(long id, long amount, String owner) {
+    }
+}
@@ -0,0 +1,51 @@
+package aidenwaring.intro.cashcard.routing;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.Duration;
+
+/*
+The principals that wrote something in the last `stickyFor`, whose reads ReplicaRoutingDataSource keeps on the primary.
+A replica only catches up with the primary after a moment, so a client reading straight after its own write
+could otherwise get the card it just created as 404, or its old amount back.
+stickyFor should comfortably exceed the replicas' usual lag.
+
+Only this instance knows who wrote, so a load balancer that spreads one client over several instances
+needs session affinity for the guarantee to hold.
+ */
+public class RecentWriters {
+    private final Cache<String, Boolean> writers;
+
+    public RecentWriters(long maximumSize, Duration stickyFor) {
+        this.writers = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(stickyFor)
+                .build();
+    }
+
+    // Restarts the principal's window; writes without one (scheduled jobs, startup) have nobody to stick to
+    public void currentPrincipalWrote() {
+        String principal = currentPrincipal();
+        if (principal != null) {
+            wrote(principal);
+        }
+    }
+
+    // For writes made on a principal's behalf by a thread without one (see CashCardWriteBehindService)
+    public void wrote(String principal) {
+        writers.put(principal, Boolean.TRUE);
+    }
+
+    public boolean currentPrincipalWroteRecently() {
+        String principal = currentPrincipal();
+        return principal != null && writers.getIfPresent(principal) != null;
+    }
+
+    private static String currentPrincipal() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication == null ? null : authentication.getName();
+    }
+}
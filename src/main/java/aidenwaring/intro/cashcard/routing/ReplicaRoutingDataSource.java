@@ -0,0 +1,43 @@
+package aidenwaring.intro.cashcard.routing;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/*
+Hands out replica connections to read-only transactions, and primary connections to everything else.
+
+Reads are marked @Transactional(readOnly = true) on CashCardRepository; writes (save, deleteById, and everything
+CashCardService does in its TransactionTemplate) run in read-write transactions, and code without a transaction
+gets the primary too, so nothing can accidentally write to a replica.
+A principal that has just written keeps reading from the primary for a while (see RecentWriters).
+
+The decision is made when a connection is actually needed, so this has to sit behind a LazyConnectionDataSourceProxy:
+the transaction manager asks for its connection before the transaction is marked read-only.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+    enum Target {PRIMARY, REPLICA}
+
+    private final RecentWriters recentWriters;
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica, RecentWriters recentWriters) {
+        this.recentWriters = recentWriters;
+        setTargetDataSources(Map.of(Target.PRIMARY, primary, Target.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            return Target.PRIMARY;
+        }
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            recentWriters.currentPrincipalWrote();
+            return Target.PRIMARY;
+        }
+        return recentWriters.currentPrincipalWroteRecently() ? Target.PRIMARY : Target.REPLICA;
+    }
+}
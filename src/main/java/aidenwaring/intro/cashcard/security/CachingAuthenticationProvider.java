@@ -0,0 +1,55 @@
+package aidenwaring.intro.cashcard.security;
+
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetails;
+
+/*
+Sits in front of the real (BCrypt-checking) AuthenticationProvider.
+
+HTTP Basic sends the username and password with every request, and BCrypt is slow on purpose.
+Once a username/password pair has been verified we remember it in the VerifiedCredentialCache,
+so following requests with the same credentials skip the delegate entirely.
+Anything that isn't a cache hit (new user, wrong password, expired entry) goes to the delegate as before.
+ */
+public class CachingAuthenticationProvider implements AuthenticationProvider {
+    private final AuthenticationProvider delegate;
+    private final VerifiedCredentialCache verifiedCredentials;
+
+    public CachingAuthenticationProvider(AuthenticationProvider delegate, VerifiedCredentialCache verifiedCredentials) {
+        this.delegate = delegate;
+        this.verifiedCredentials = verifiedCredentials;
+    }
+
+    @Override
+    public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+        String username = authentication.getName();
+        Object credentials = authentication.getCredentials();
+        if (credentials == null) {
+            return delegate.authenticate(authentication);
+        }
+
+        String password = credentials.toString();
+        UserDetails user = verifiedCredentials.get(username, password);
+        if (user != null) {
+            // A fresh token per request, so request details (e.g. remote address) aren't shared between requests
+            UsernamePasswordAuthenticationToken result =
+                    UsernamePasswordAuthenticationToken.authenticated(user, null, user.getAuthorities());
+            result.setDetails(authentication.getDetails());
+            return result;
+        }
+
+        Authentication result = delegate.authenticate(authentication);
+        if (result != null && result.getPrincipal() instanceof UserDetails verifiedUser) {
+            verifiedCredentials.put(username, password, verifiedUser);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean supports(Class<?> authentication) {
+        return delegate.supports(authentication);
+    }
+}
@@ -0,0 +1,143 @@
+package aidenwaring.intro.cashcard.security;
+
+import aidenwaring.intro.cashcard.repository.CashCardUserRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+The card owners' logins (username -> BCrypt hash and roles), held in memory and kept in step with cash_card_user.
+
+Nothing is read at startup, and nothing is hashed at all: the hashes are stored precomputed in the table.
+The first lookup loads every enabled user; after that refresh() only reads the rows changed since the last read
+and applies them to the live map. Lookups are plain ConcurrentHashMap reads and never wait for a refresh.
+
+Each user costs one map entry: the hash as 60 ASCII bytes, and a reference to an authority list shared by every
+user with the same roles. A UserDetails is only built for the user being authenticated.
+
+When a refresh sees a user's hash or roles change (or the user disabled), their verified credentials are evicted too.
+Rows are read again for a while after they changed (the overlap), so a change whose transaction committed
+after a refresh had already read past its UPDATED_AT is picked up by the next one. Deleted rows are never seen:
+users are disabled instead, or they stay in the index until the application restarts.
+ */
+public class JdbcUserIndex implements UserDetailsService, MeterBinder {
+    private final CashCardUserRepository userRepository;
+    private final VerifiedCredentialCache verifiedCredentials;
+    private final Duration overlap;
+    // Most users have one of a handful of role combinations, so their authority lists are shared
+    private final Map<String, List<GrantedAuthority>> authoritiesByRoles = new ConcurrentHashMap<>();
+    private final Object loadLock = new Object();
+
+    private volatile Map<String, IndexedUser> users; // null until the first lookup
+    private Timestamp changedSince = new Timestamp(0); // guarded by loadLock
+
+    public JdbcUserIndex(CashCardUserRepository userRepository, VerifiedCredentialCache verifiedCredentials,
+                         Duration overlap) {
+        this.userRepository = userRepository;
+        this.verifiedCredentials = verifiedCredentials;
+        this.overlap = overlap;
+    }
+
+    @Override
+    public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        IndexedUser user = index().get(username);
+        if (user == null) {
+            throw new UsernameNotFoundException(username);
+        }
+        return new User(username, new String(user.passwordHash(), StandardCharsets.US_ASCII), user.authorities());
+    }
+
+    // Until someone has logged in there's nothing to refresh; the first lookup loads the whole table anyway
+    @Scheduled(initialDelayString = "${cashcard.users.refresh-interval}",
+            fixedDelayString = "${cashcard.users.refresh-interval}")
+    public void refresh() {
+        synchronized (loadLock) {
+            Map<String, IndexedUser> current = users;
+            if (current == null) {
+                return;
+            }
+            userRepository.forEachChangedSince(changedSince, row -> {
+                seen(row.updatedAt());
+                IndexedUser previous = row.enabled()
+                        ? current.put(row.username(), indexed(row))
+                        : current.remove(row.username());
+                if (previous != null && !previous.sameAs(current.get(row.username()))) {
+                    verifiedCredentials.evict(row.username());
+                }
+            });
+        }
+    }
+
+    // Publishes cashcard.users.indexed, the number of users held in memory (0 until the first lookup)
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("cashcard.users.indexed", this, index -> {
+                    Map<String, IndexedUser> current = index.users;
+                    return current == null ? 0 : current.size();
+                })
+                .description("Card owners held in the in-memory user index")
+                .register(registry);
+    }
+
+    private Map<String, IndexedUser> index() {
+        Map<String, IndexedUser> current = users;
+        if (current != null) {
+            return current;
+        }
+        synchronized (loadLock) {
+            if (users == null) {
+                Map<String, IndexedUser> loaded = new ConcurrentHashMap<>();
+                userRepository.forEachEnabled(row -> {
+                    seen(row.updatedAt());
+                    loaded.put(row.username(), indexed(row));
+                });
+                users = loaded;
+            }
+            return users;
+        }
+    }
+
+    // The next refresh starts `overlap` before the latest change we've read
+    private void seen(Timestamp updatedAt) {
+        Timestamp since = new Timestamp(updatedAt.getTime() - overlap.toMillis());
+        if (since.after(changedSince)) {
+            changedSince = since;
+        }
+    }
+
+    private IndexedUser indexed(CashCardUserRepository.UserRow row) {
+        return new IndexedUser(row.password().getBytes(StandardCharsets.US_ASCII),
+                authoritiesByRoles.computeIfAbsent(row.roles(), JdbcUserIndex::authorities));
+    }
+
+    private static List<GrantedAuthority> authorities(String roles) {
+        return Arrays.stream(roles.split(","))
+                .map(String::trim)
+                .filter(role -> !role.isEmpty())
+                .<GrantedAuthority>map(role -> new SimpleGrantedAuthority("ROLE_" + role))
+                .toList();
+    }
+
+    private record IndexedUser(byte[] passwordHash, List<GrantedAuthority> authorities) {
+
+        // Authority lists are shared, so the same roles means the same list
+        boolean sameAs(IndexedUser other) {
+            return other != null && authorities == other.authorities && Arrays.equals(passwordHash, other.passwordHash);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package aidenwaring.intro.cashcard.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+
+/*
+A bounded, expiring cache of HTTP Basic credentials that have already passed the BCrypt check.
+
+The raw password is never stored. Each entry keeps an HMAC-SHA256 digest of the username and password,
+keyed with a random secret that only lives in this process, and the UserDetails that were loaded for it.
+Entries are looked up by username so that a password or role change can evict them directly.
+ */
+public class VerifiedCredentialCache implements MeterBinder {
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private final Cache<String, VerifiedCredential> cache;
+    private final SecretKeySpec digestKey;
+
+    public VerifiedCredentialCache(long maximumSize, Duration expireAfterWrite) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        this.digestKey = new SecretKeySpec(secret, HMAC_ALGORITHM);
+    }
+
+    // Returns the cached user only if the presented password is the one that was verified
+    public UserDetails get(String username, String password) {
+        VerifiedCredential verified = cache.getIfPresent(username);
+        if (verified == null || !MessageDigest.isEqual(verified.digest(), digest(username, password))) {
+            return null;
+        }
+        return verified.user();
+    }
+
+    public void put(String username, String password, UserDetails user) {
+        cache.put(username, new VerifiedCredential(digest(username, password), user));
+    }
+
+    public void evict(String username) {
+        cache.invalidate(username);
+    }
+
+    // Publishes cache.gets (hit/miss), cache.evictions and cache.size tagged with cache=credentials
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "credentials");
+    }
+
+    private byte[] digest(String username, String password) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(digestKey);
+            mac.update(username.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0); // separator, so "ab" + "c" and "a" + "bc" don't collide
+            return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(HMAC_ALGORITHM + " is not available", e);
+        }
+    }
+
+    private record VerifiedCredential(byte[] digest, UserDetails user) {
+    }
+}
@@ -0,0 +1,179 @@
+package aidenwaring.intro.cashcard.service;
+
+import aidenwaring.intro.cashcard.events.CashCardOutbox;
+import aidenwaring.intro.cashcard.record.CashCard;
+import aidenwaring.intro.cashcard.record.CashCardBatchResult;
+import aidenwaring.intro.cashcard.record.CashCardEvent;
+import aidenwaring.intro.cashcard.record.Money;
+import aidenwaring.intro.cashcard.repository.CashCardBatchRepository;
+import aidenwaring.intro.cashcard.repository.CashCardSummaryRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/*
+Applies bulk creates, updates and deletes chunk by chunk.
+
+Each chunk is written in its own transaction: a failure only rolls back the chunk it happened in,
+and no single transaction holds locks on hundreds of thousands of rows.
+Cards are pulled from the Iterator as we go, so the request body never has to be held in memory all at once.
+An item that can't be read (malformed JSON, say) ends the batch: the items read before it are still written,
+and it gets a 400 result with the error, so the results always say exactly which items were committed.
+The owner's summary is adjusted once per chunk, and the chunk's events are added to the outbox in one JDBC batch,
+both in the chunk's transaction.
+ */
+@Service
+public class CashCardBatchService {
+    private final CashCardBatchRepository batchRepository;
+    private final CashCardSummaryRepository summaryRepository;
+    private final CashCardService cashCardService;
+    private final TransactionTemplate transactionTemplate;
+    private final CashCardOutbox outbox;
+    private final int chunkSize;
+
+    public CashCardBatchService(CashCardBatchRepository batchRepository,
+                                CashCardSummaryRepository summaryRepository,
+                                CashCardService cashCardService,
+                                TransactionTemplate transactionTemplate,
+                                CashCardOutbox outbox,
+                                @Value("${cashcard.batch.chunk-size}") int chunkSize) {
+        this.batchRepository = batchRepository;
+        this.summaryRepository = summaryRepository;
+        this.cashCardService = cashCardService;
+        this.transactionTemplate = transactionTemplate;
+        this.outbox = outbox;
+        this.chunkSize = chunkSize;
+    }
+
+    public List<CashCardBatchResult> createAll(String owner, Iterator<CashCard> cashCards) {
+        return inChunks(owner, cashCards, (firstIndex, chunk) -> {
+            List<CashCardBatchResult> results = new ArrayList<>(chunk.size());
+            List<CashCard> valid = new ArrayList<>(chunk.size());
+            List<Money> added = new ArrayList<>(chunk.size());
+            for (CashCard cashCard : chunk) {
+                if (cashCard.amount() != null) {
+                    valid.add(cashCard);
+                    added.add(cashCard.amount());
+                }
+            }
+            Iterator<Long> ids = batchRepository.insertAll(owner, valid).iterator();
+            summaryRepository.added(owner, added);
+            List<CashCardEvent> events = new ArrayList<>(valid.size());
+            for (int i = 0; i < chunk.size(); i++) {
+                Money amount = chunk.get(i).amount();
+                if (amount == null) {
+                    results.add(result(firstIndex + i, null, HttpStatus.BAD_REQUEST));
+                } else {
+                    Long id = ids.next();
+                    results.add(result(firstIndex + i, id, HttpStatus.CREATED));
+                    events.add(CashCardEvent.created(id, owner, amount));
+                }
+            }
+            outbox.record(events);
+            return results;
+        });
+    }
+
+    public List<CashCardBatchResult> updateAll(String owner, Iterator<CashCard> cashCards) {
+        return inChunks(owner, cashCards, (firstIndex, chunk) -> {
+            Map<Long, Money> owned = batchRepository.findOwnedAmounts(owner,
+                    chunk.stream().map(CashCard::id).filter(Objects::nonNull).toList());
+
+            List<CashCardBatchResult> results = new ArrayList<>(chunk.size());
+            List<CashCard> updates = new ArrayList<>(chunk.size());
+            List<Money> removed = new ArrayList<>(chunk.size());
+            for (int i = 0; i < chunk.size(); i++) {
+                CashCard cashCard = chunk.get(i);
+                if (cashCard.id() == null || cashCard.amount() == null) {
+                    results.add(result(firstIndex + i, cashCard.id(), HttpStatus.BAD_REQUEST));
+                } else if (!owned.containsKey(cashCard.id())) {
+                    results.add(result(firstIndex + i, cashCard.id(), HttpStatus.NOT_FOUND));
+                } else {
+                    updates.add(cashCard);
+                    // If the same card is updated twice in a chunk, the second update replaces the first one's amount
+                    removed.add(owned.put(cashCard.id(), cashCard.amount()));
+                    results.add(result(firstIndex + i, cashCard.id(), HttpStatus.NO_CONTENT));
+                }
+            }
+            batchRepository.updateAll(owner, updates);
+            summaryRepository.removed(owner, removed);
+            summaryRepository.added(owner, updates.stream().map(CashCard::amount).toList());
+            outbox.record(updates.stream().map(cashCard -> CashCardEvent.updated(cashCard.id(), owner, cashCard.amount())).toList());
+            return results;
+        });
+    }
+
+    public List<CashCardBatchResult> deleteAll(String owner, Iterator<Long> ids) {
+        return inChunks(owner, ids, (firstIndex, chunk) -> {
+            Map<Long, Money> owned = batchRepository.findOwnedAmounts(owner, chunk);
+            batchRepository.deleteAll(owner, owned.keySet());
+            summaryRepository.removed(owner, owned.values());
+            outbox.record(owned.keySet().stream().map(id -> CashCardEvent.deleted(id, owner)).toList());
+
+            List<CashCardBatchResult> results = new ArrayList<>(chunk.size());
+            for (int i = 0; i < chunk.size(); i++) {
+                Long id = chunk.get(i);
+                results.add(result(firstIndex + i, id, owned.containsKey(id) ? HttpStatus.NO_CONTENT : HttpStatus.NOT_FOUND));
+            }
+            return results;
+        });
+    }
+
+    private <T> List<CashCardBatchResult> inChunks(String owner, Iterator<T> items, ChunkWriter<T> writer) {
+        List<CashCardBatchResult> results = new ArrayList<>();
+        List<T> chunk = new ArrayList<>(chunkSize);
+        RuntimeException unreadable = null;
+        while (true) {
+            try {
+                if (!items.hasNext()) {
+                    break;
+                }
+                chunk.add(items.next());
+            } catch (RuntimeException e) {
+                // Jackson's MappingIterator reports malformed JSON, and an item it can't map, this way
+                unreadable = e;
+                break;
+            }
+            if (chunk.size() == chunkSize) {
+                write(owner, chunk, writer, results);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            write(owner, chunk, writer, results);
+        }
+        if (unreadable != null) {
+            results.add(new CashCardBatchResult(results.size(), null, HttpStatus.BAD_REQUEST.value(),
+                    "Unreadable item, nothing after it was processed: " + unreadable.getMessage()));
+        }
+        return results;
+    }
+
+    private <T> void write(String owner, List<T> chunk, ChunkWriter<T> writer, List<CashCardBatchResult> results) {
+        int firstIndex = results.size();
+        List<CashCardBatchResult> written = transactionTemplate.execute(status -> writer.write(firstIndex, chunk));
+        // Only once the chunk is committed, or a concurrent read could cache the old row again
+        for (CashCardBatchResult result : written) {
+            if (result.status() == HttpStatus.NO_CONTENT.value()) {
+                cashCardService.evict(result.id(), owner);
+            }
+        }
+        results.addAll(written);
+        chunk.clear();
+    }
+
+    private static CashCardBatchResult result(int index, Long id, HttpStatus status) {
+        return new CashCardBatchResult(index, id, status.value());
+    }
+
+    @FunctionalInterface
+    private interface ChunkWriter<T> {
+        List<CashCardBatchResult> write(int firstIndex, List<T> chunk);
+    }
+}
@@ -0,0 +1,136 @@
+package aidenwaring.intro.cashcard.service;
+
+import aidenwaring.intro.cashcard.events.CashCardOutbox;
+import aidenwaring.intro.cashcard.record.CashCard;
+import aidenwaring.intro.cashcard.record.CashCardEvent;
+import aidenwaring.intro.cashcard.record.Money;
+import aidenwaring.intro.cashcard.repository.CashCardRepository;
+import aidenwaring.intro.cashcard.repository.CashCardSummaryRepository;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+
+/*
+Single-card reads and writes, with a read-through cache in front of CashCardRepository.findByIdAndOwner().
+
+Cards are cached per (id, owner), so one owner can never be served another owner's card from the cache.
+The cache is bounded by size (Caffeine evicts with W-TinyLFU, keeping the frequently read cards) and by age.
+Every write goes through here and evicts the card it changed, so a GET after a PUT or DELETE never sees the old row.
+Cards that don't exist aren't cached, so probing random ids can't flood the cache.
+
+Each write also updates the owner's summary (count, total, min, max) and records an event in the outbox,
+both in the same transaction.
+ */
+@Service
+public class CashCardService implements MeterBinder {
+    private final CashCardRepository cashCardRepository;
+    private final CashCardSummaryRepository summaryRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final CashCardOutbox outbox;
+    private final LoadingCache<OwnedCard, CashCard> cashCards;
+
+    public CashCardService(CashCardRepository cashCardRepository,
+                           CashCardSummaryRepository summaryRepository,
+                           TransactionTemplate transactionTemplate,
+                           CashCardOutbox outbox,
+                           @Value("${cashcard.cache.cards.maximum-size}") long maximumSize,
+                           @Value("${cashcard.cache.cards.expire-after-write}") Duration expireAfterWrite) {
+        this.cashCardRepository = cashCardRepository;
+        this.summaryRepository = summaryRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.outbox = outbox;
+        this.cashCards = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build(key -> cashCardRepository.findByIdAndOwner(key.id(), key.owner()));
+    }
+
+    public CashCard findByIdAndOwner(Long id, String owner) {
+        return cashCards.get(new OwnedCard(id, owner));
+    }
+
+    // Served from the same cache entry as findByIdAndOwner()
+    public boolean existsByIdAndOwner(Long id, String owner) {
+        return findByIdAndOwner(id, owner) != null;
+    }
+
+    public CashCard create(Money amount, String owner) {
+        return transactionTemplate.execute(status -> {
+            CashCard saved = cashCardRepository.save(new CashCard(null, amount, owner));
+            summaryRepository.added(owner, List.of(amount));
+            outbox.record(CashCardEvent.created(saved.id(), owner, amount));
+            return saved;
+        });
+    }
+
+    /*
+        Returns false if the card doesn't exist or belongs to someone else.
+        The old amount is read from the locked row, not the cache, so the summary is adjusted by the right amount
+        even when two updates of the same card race.
+        With an expectedVersion, the update only happens if the card is still at that version
+        (the client's If-Match), and OptimisticLockingFailureException is thrown otherwise.
+     */
+    public boolean update(Long id, Money amount, String owner, Long expectedVersion) {
+        boolean updated = transactionTemplate.execute(status -> {
+            CashCard cashCard = cashCardRepository.findForUpdateByIdAndOwner(id, owner);
+            if (cashCard == null) {
+                return false;
+            }
+            if (expectedVersion != null && !expectedVersion.equals(cashCard.version())) {
+                throw new OptimisticLockingFailureException(
+                        "Card " + id + " is at version " + cashCard.version() + ", not " + expectedVersion);
+            }
+            cashCardRepository.save(new CashCard(cashCard.id(), amount, owner, cashCard.version()));
+            summaryRepository.removed(owner, List.of(cashCard.amount()));
+            summaryRepository.added(owner, List.of(amount));
+            outbox.record(CashCardEvent.updated(id, owner, amount));
+            return true;
+        });
+        // Only once the transaction is committed, or a concurrent read could cache the old row again
+        if (updated) {
+            evict(id, owner);
+        }
+        return updated;
+    }
+
+    public boolean delete(Long id, String owner) {
+        boolean deleted = transactionTemplate.execute(status -> {
+            CashCard cashCard = cashCardRepository.findForUpdateByIdAndOwner(id, owner);
+            if (cashCard == null) {
+                return false;
+            }
+            cashCardRepository.deleteById(id);
+            summaryRepository.removed(owner, List.of(cashCard.amount()));
+            outbox.record(CashCardEvent.deleted(id, owner));
+            return true;
+        });
+        if (deleted) {
+            evict(id, owner);
+        }
+        return deleted;
+    }
+
+    // For writes that bypass this service, like the /cashcards/batch endpoints
+    public void evict(Long id, String owner) {
+        cashCards.invalidate(new OwnedCard(id, owner));
+    }
+
+    // Publishes cache.gets (hit/miss), cache.evictions and cache.size tagged with cache=cashCards
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cashCards, "cashCards");
+    }
+
+    private record OwnedCard(Long id, String owner) {
+    }
+}
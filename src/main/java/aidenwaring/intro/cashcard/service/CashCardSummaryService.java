@@ -0,0 +1,78 @@
+package aidenwaring.intro.cashcard.service;
+
+import aidenwaring.intro.cashcard.record.CashCardSummary;
+import aidenwaring.intro.cashcard.repository.CashCardSummaryRepository;
+import aidenwaring.intro.cashcard.sharding.Shards;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/*
+Reads the per-owner summaries, and periodically checks them against the cards they summarize.
+
+The summaries are maintained incrementally by every write (see CashCardSummaryRepository), so they should never drift.
+But rows written straight into the database (a migration, a manual fix) bypass that, so verifyAll() compares
+every summary with a fresh aggregate of cash_card and rebuilds the ones that differ.
+That aggregate reads all of cash_card, so it's only scheduled when asked for (see CashCardSummaryVerifier);
+otherwise run it after touching the table by hand.
+ */
+@Service
+public class CashCardSummaryService {
+    private static final Logger log = LoggerFactory.getLogger(CashCardSummaryService.class);
+
+    private final CashCardSummaryRepository summaryRepository;
+    private final TransactionTemplate transactionTemplate;
+    // Only there when cashcard.sharding.enabled=true; then every shard is checked in turn
+    private final Shards shards;
+
+    public CashCardSummaryService(CashCardSummaryRepository summaryRepository, TransactionTemplate transactionTemplate,
+                                  ObjectProvider<Shards> shards) {
+        this.summaryRepository = summaryRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.shards = shards.getIfAvailable();
+    }
+
+    public CashCardSummary summaryFor(String owner) {
+        return summaryRepository.findByOwner(owner);
+    }
+
+    /*
+        Returns how many owners' summaries had to be rebuilt.
+        Cards written while we compare can make a correct summary look wrong; rebuilding it anyway is harmless.
+     */
+    public int verifyAll() {
+        if (shards == null) {
+            return verifyAllOnCurrentShard();
+        }
+        int rebuilt = 0;
+        for (int shard = 0; shard < shards.count(); shard++) {
+            rebuilt += Shards.onShard(shard, this::verifyAllOnCurrentShard);
+        }
+        return rebuilt;
+    }
+
+    private int verifyAllOnCurrentShard() {
+        Map<String, CashCardSummary> expected = summaryRepository.computeAll();
+        Map<String, CashCardSummary> actual = summaryRepository.findAll();
+
+        Set<String> owners = new HashSet<>(expected.keySet());
+        owners.addAll(actual.keySet());
+        int rebuilt = 0;
+        for (String owner : owners) {
+            CashCardSummary summary = actual.getOrDefault(owner, CashCardSummary.EMPTY);
+            if (!summary.equals(expected.getOrDefault(owner, CashCardSummary.EMPTY))) {
+                log.warn("Rebuilding the card summary of {}, which had drifted: {}", owner, summary);
+                // One transaction per owner, so the row locks are only held briefly
+                transactionTemplate.executeWithoutResult(status -> summaryRepository.rebuild(owner));
+                rebuilt++;
+            }
+        }
+        return rebuilt;
+    }
+}
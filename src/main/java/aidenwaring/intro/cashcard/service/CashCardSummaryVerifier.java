@@ -0,0 +1,25 @@
+package aidenwaring.intro.cashcard.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/*
+Runs CashCardSummaryService.verifyAll() every cashcard.summary.verify.interval.
+Every run aggregates all of cash_card, so it's only worth it where cards are written around the application.
+ */
+@Component
+@ConditionalOnProperty(name = "cashcard.summary.verify.enabled", havingValue = "true")
+public class CashCardSummaryVerifier {
+    private final CashCardSummaryService summaryService;
+
+    public CashCardSummaryVerifier(CashCardSummaryService summaryService) {
+        this.summaryService = summaryService;
+    }
+
+    @Scheduled(initialDelayString = "${cashcard.summary.verify.interval}",
+            fixedDelayString = "${cashcard.summary.verify.interval}")
+    public void verifyAll() {
+        summaryService.verifyAll();
+    }
+}
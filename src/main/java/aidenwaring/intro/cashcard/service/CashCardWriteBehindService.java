@@ -0,0 +1,238 @@
+package aidenwaring.intro.cashcard.service;
+
+import aidenwaring.intro.cashcard.record.CashCard;
+import aidenwaring.intro.cashcard.record.Money;
+import aidenwaring.intro.cashcard.repository.WriteBehindLog;
+import aidenwaring.intro.cashcard.routing.RecentWriters;
+import aidenwaring.intro.cashcard.sharding.Shards;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+Write-behind for PUT /cashcards/{id}, for clients that update the same cards many times a second.
+
+An update is acknowledged once it's in the WriteBehindLog, and kept in memory with only the latest amount per card.
+Every flush interval, those latest amounts are written to the database as JDBC batches (through CashCardBatchService,
+so the owners' summaries stay right), however many updates each card got in between.
+
+There are two log files. A flush switches appends to the other (empty) one, writes the updates of the first,
+and only empties the first once they're committed. On startup, whatever is left in either log is written first.
+Single-card reads see pending amounts (see withPendingUpdate()); lists, exports and summaries catch up on the next flush.
+A card deleted while it has a pending update stays deleted: the update finds nothing to change.
+
+When the active log is full, an update waits (up to cashcard.write-behind.full-wait) for the next flush
+to switch logs, and is then turned away with WriteBehindFullException rather than flushing on the request thread.
+With a replica (cashcard.datasource.replica.enabled), a flush counts as a write by each owner it writes for,
+so their next reads come from the primary; otherwise the card cache, just evicted, could be refilled with the
+replica's old amount.
+ */
+@Service
+@ConditionalOnProperty(name = "cashcard.write-behind.enabled", havingValue = "true")
+public class CashCardWriteBehindService implements MeterBinder, DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(CashCardWriteBehindService.class);
+
+    private final CashCardService cashCardService;
+    private final CashCardBatchService batchService;
+    private final WriteBehindLog[] logs;
+    private final long fullWaitNanos;
+    // Only there when cashcard.datasource.replica.enabled=true
+    private final RecentWriters recentWriters;
+    // Guards appends together with the in-memory updates, so both always agree on the latest amount of a card
+    private final ReentrantLock appendLock = new ReentrantLock();
+    // Signalled when a flush switches to the empty log
+    private final Condition logSwitched = appendLock.newCondition();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private int active;
+    private long generation;
+    private volatile Map<Long, PendingUpdate> pending = new ConcurrentHashMap<>();
+    // What the flush in progress is writing, or what the last one failed to write
+    private volatile Map<Long, PendingUpdate> flushing = Map.of();
+
+    public CashCardWriteBehindService(CashCardService cashCardService,
+                                      CashCardBatchService batchService,
+                                      @Value("${cashcard.write-behind.directory}") Path directory,
+                                      @Value("${cashcard.write-behind.log-size}") DataSize logSize,
+                                      @Value("${cashcard.write-behind.force}") boolean force,
+                                      @Value("${cashcard.write-behind.full-wait}") Duration fullWait,
+                                      ObjectProvider<RecentWriters> recentWriters) throws IOException {
+        this.cashCardService = cashCardService;
+        this.batchService = batchService;
+        this.fullWaitNanos = fullWait.toNanos();
+        this.recentWriters = recentWriters.getIfAvailable();
+        Files.createDirectories(directory);
+        this.logs = new WriteBehindLog[]{
+                new WriteBehindLog(directory.resolve("cashcards-0.log"), Math.toIntExact(logSize.toBytes()), force),
+                new WriteBehindLog(directory.resolve("cashcards-1.log"), Math.toIntExact(logSize.toBytes()), force)};
+        replay();
+    }
+
+    // Updates that were acknowledged but never flushed, because the application stopped without a clean shutdown
+    private void replay() {
+        Map<Long, PendingUpdate> unflushed = new HashMap<>();
+        WriteBehindLog[] oldestFirst = logs.clone();
+        Arrays.sort(oldestFirst, Comparator.comparingLong(WriteBehindLog::generation));
+        for (WriteBehindLog writeBehindLog : oldestFirst) {
+            for (WriteBehindLog.Entry entry : writeBehindLog.read()) {
+                unflushed.put(entry.id(), new PendingUpdate(entry.owner(), Money.ofMinorUnits(entry.amount())));
+            }
+        }
+        if (!unflushed.isEmpty()) {
+            log.info("Replaying {} card updates from the write-behind log", unflushed.size());
+            write(unflushed);
+        }
+        generation = Math.max(logs[0].generation(), logs[1].generation()) + 1;
+        logs[1].reset(WriteBehindLog.EMPTY);
+        logs[0].reset(generation);
+        active = 0;
+    }
+
+    /*
+        Same contract as CashCardService.update(), but the database is only written on the next flush.
+        A card's version only moves when it's flushed, so while it has a pending update there's no version
+        an If-Match could name, and a conditional update fails until the flush. The check isn't atomic with
+        the append, so two conditional updates racing for the same card can both pass.
+     */
+    public boolean update(Long id, Money amount, String owner, Long expectedVersion) {
+        CashCard current = withPendingUpdate(cashCardService.findByIdAndOwner(id, owner));
+        if (current == null) {
+            return false;
+        }
+        if (expectedVersion != null && !expectedVersion.equals(current.version())) {
+            throw new OptimisticLockingFailureException("Card " + id + " is not at version " + expectedVersion);
+        }
+        append(id, new PendingUpdate(owner, amount));
+        return true;
+    }
+
+    // The card as it will be once pending updates are flushed. Its version isn't known until then, so it's null
+    public CashCard withPendingUpdate(CashCard cashCard) {
+        if (cashCard == null) {
+            return null;
+        }
+        // pending is replaced only after flushing has been set, so an update can't slip between the two lookups
+        PendingUpdate update = pending.get(cashCard.id());
+        if (update == null) {
+            update = flushing.get(cashCard.id());
+        }
+        if (update == null || !update.owner().equals(cashCard.owner())) {
+            return cashCard;
+        }
+        return new CashCard(cashCard.id(), update.amount(), cashCard.owner());
+    }
+
+    @Scheduled(initialDelayString = "${cashcard.write-behind.flush-interval}",
+            fixedDelayString = "${cashcard.write-behind.flush-interval}")
+    public void flush() {
+        flushLock.lock();
+        try {
+            // A flush that failed last time is retried before its log can be reused
+            if (!flushing.isEmpty()) {
+                write(flushing);
+                logs[1 - active].reset(WriteBehindLog.EMPTY);
+                flushing = Map.of();
+            }
+
+            Map<Long, PendingUpdate> updates;
+            WriteBehindLog updatesLog;
+            appendLock.lock();
+            try {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                updates = pending;
+                updatesLog = logs[active];
+                flushing = updates;
+                pending = new ConcurrentHashMap<>();
+                active = 1 - active;
+                logs[active].reset(++generation);
+                logSwitched.signalAll();
+            } finally {
+                appendLock.unlock();
+            }
+
+            write(updates);
+            updatesLog.reset(WriteBehindLog.EMPTY);
+            flushing = Map.of();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void append(Long id, PendingUpdate update) {
+        appendLock.lock();
+        try {
+            long waitNanos = fullWaitNanos;
+            while (!logs[active].append(id, update.amount().minorUnits(), update.owner())) {
+                if (waitNanos <= 0) {
+                    throw new WriteBehindFullException();
+                }
+                waitNanos = logSwitched.awaitNanos(waitNanos);
+            }
+            pending.put(id, update);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WriteBehindFullException();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void write(Map<Long, PendingUpdate> updates) {
+        Map<String, List<CashCard>> byOwner = new HashMap<>();
+        updates.forEach((id, update) -> byOwner
+                .computeIfAbsent(update.owner(), owner -> new ArrayList<>())
+                .add(new CashCard(id, update.amount(), update.owner())));
+        // Flushing runs on a scheduler thread, with no principal to pick the owner's shard by, or to mark as a writer
+        byOwner.forEach((owner, cashCards) -> {
+            if (recentWriters != null) {
+                recentWriters.wrote(owner);
+            }
+            Shards.forOwner(owner, () -> batchService.updateAll(owner, cashCards.iterator()));
+        });
+    }
+
+    // Publishes cashcard.write-behind.pending: cards with an update that hasn't reached the database yet
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("cashcard.write-behind.pending", this, service -> service.pending.size() + service.flushing.size())
+                .description("Cards with an acknowledged update that hasn't been written to the database yet")
+                .register(registry);
+    }
+
+    // A clean shutdown leaves nothing to replay
+    @Override
+    public void destroy() throws IOException {
+        flush();
+        for (WriteBehindLog writeBehindLog : logs) {
+            writeBehindLog.close();
+        }
+    }
+
+    private record PendingUpdate(String owner, Money amount) {
+    }
+}
@@ -0,0 +1,9 @@
+package aidenwaring.intro.cashcard.service;
+
+// The write-behind log stayed full for all of cashcard.write-behind.full-wait: flushes aren't keeping up
+public class WriteBehindFullException extends RuntimeException {
+
+    public WriteBehindFullException() {
+        super("The write-behind log is full");
+    }
+}
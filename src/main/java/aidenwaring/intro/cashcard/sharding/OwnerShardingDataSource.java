@@ -0,0 +1,32 @@
+package aidenwaring.intro.cashcard.sharding;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+Hands out connections to the shard the current thread works on (see Shards.current()).
+
+A transaction keeps the connection it started with, so everything in it (a card and its owner's summary,
+say) happens on one shard, and the transaction manager needs nothing special.
+ */
+public class OwnerShardingDataSource extends AbstractRoutingDataSource {
+    private final Shards shards;
+
+    public OwnerShardingDataSource(Shards shards) {
+        this.shards = shards;
+        Map<Object, Object> targets = new HashMap<>();
+        for (int shard = 0; shard < shards.count(); shard++) {
+            targets.put(shard, shards.dataSource(shard));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(shards.dataSource(Shards.HOME_SHARD));
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return shards.current();
+    }
+}
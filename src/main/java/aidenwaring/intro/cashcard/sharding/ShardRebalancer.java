@@ -0,0 +1,98 @@
+package aidenwaring.intro.cashcard.sharding;
+
+import aidenwaring.intro.cashcard.repository.CashCardSummaryRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/*
+Moves every owner's cards and summary to the shard they hash to, after shards have been added
+(or after rows were loaded into the wrong shard). Run it with cashcard.sharding.rebalance-on-startup=true,
+straight after changing cashcard.sharding.shards.
+
+Cards are moved in chunks: each chunk is copied to the owner's shard in one transaction, then deleted from the old one
+in another. The two databases can't share a transaction, so a crash in between leaves the chunk on both;
+running the rebalancer again copies it over its earlier copy and finishes the move. Ids stay the same.
+
+Requests are routed by the new shard count as soon as it's configured, so until its move has finished
+an owner only sees the cards already moved.
+Their card events (see CashCardEventRelay) stay behind with the old shard's offsets, so consumers following
+GET /cashcards/changes for a moved owner should start again without an offset and rescan their cards.
+Their idempotency keys (with cashcard.idempotency.store=jdbc) stay behind too, so a retry that spans the move
+can create the card a second time. Best to move owners while they're quiet.
+ */
+public class ShardRebalancer {
+    private static final Logger log = LoggerFactory.getLogger(ShardRebalancer.class);
+    private static final int CHUNK_SIZE = 1000;
+
+    private final Shards shards;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final CashCardSummaryRepository summaryRepository;
+
+    public ShardRebalancer(Shards shards, JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                           CashCardSummaryRepository summaryRepository) {
+        this.shards = shards;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.summaryRepository = summaryRepository;
+    }
+
+    // Returns how many owners were moved
+    public int rebalance() {
+        int moved = 0;
+        for (int shard = 0; shard < shards.count(); shard++) {
+            Set<String> owners = new LinkedHashSet<>(Shards.onShard(shard, () -> jdbcTemplate.queryForList(
+                    "SELECT DISTINCT owner FROM cash_card UNION SELECT owner FROM cash_card_summary", String.class)));
+            for (String owner : owners) {
+                int target = shards.shardOf(owner);
+                if (target != shard) {
+                    move(owner, shard, target);
+                    moved++;
+                }
+            }
+        }
+        log.info("Moved {} owners to their shards", moved);
+        return moved;
+    }
+
+    private void move(String owner, int source, int target) {
+        List<Object[]> chunk;
+        while (!(chunk = Shards.onShard(source, () -> readChunk(owner))).isEmpty()) {
+            List<Object[]> rows = chunk;
+            Shards.onShard(target, () -> transactionTemplate.execute(status -> {
+                jdbcTemplate.batchUpdate("DELETE FROM cash_card WHERE id = ?", ids(rows));
+                jdbcTemplate.batchUpdate("INSERT INTO cash_card (id, amount, owner, version) VALUES (?, ?, ?, ?)", rows);
+                return null;
+            }));
+            Shards.onShard(source, () -> jdbcTemplate.batchUpdate("DELETE FROM cash_card WHERE id = ?", ids(rows)));
+        }
+        // The summary is recomputed from the moved cards, rather than trusting the old shard's
+        Shards.onShard(target, () -> transactionTemplate.execute(status -> {
+            summaryRepository.rebuild(owner);
+            return null;
+        }));
+        Shards.onShard(source, () -> jdbcTemplate.update("DELETE FROM cash_card_summary WHERE owner = ?", owner));
+    }
+
+    // Each chunk that has been moved is deleted, so the next one is simply the first CHUNK_SIZE that are left
+    private List<Object[]> readChunk(String owner) {
+        return jdbcTemplate.query("SELECT id, amount, owner, version FROM cash_card WHERE owner = ? ORDER BY id LIMIT ?",
+                (row, rowNum) -> new Object[]{row.getLong("id"), row.getLong("amount"), row.getString("owner"), row.getLong("version")},
+                owner, CHUNK_SIZE);
+    }
+
+    private static List<Object[]> ids(List<Object[]> rows) {
+        List<Object[]> ids = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            ids.add(new Object[]{row[0]});
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,87 @@
+package aidenwaring.intro.cashcard.sharding;
+
+import aidenwaring.intro.cashcard.record.CashCard;
+import org.springframework.data.relational.core.mapping.event.BeforeConvertCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+Card ids that are unique across all shards, so /cashcards/{id} keeps identifying one card wherever it's stored
+(and after ShardRebalancer has moved it).
+
+An id is a number unique within its shard, times MAX_SHARDS, plus the shard: two shards can't hand out the same id.
+On top of that every id has bit 52 (FIRST_ID) set, so generated ids never meet the ids of cards created before
+sharding was turned on, which kept their identity-column ids (also through ShardRebalancer). That still leaves room
+for 2^42 cards, and ids stay below 2^53, so JavaScript clients read them as exact numbers.
+The per-shard numbers come from that shard's cash_card_id_block_seq, a block of BLOCK_SIZE at a time (hi/lo),
+so only one in BLOCK_SIZE new cards costs a round trip for the sequence. Blocks that aren't used up
+before a restart are skipped, which leaves gaps but never duplicates.
+
+Spring Data calls onBeforeConvert() before inserting a card; CashCard has a @Version, so a card without
+a version is still inserted even though it now has an id.
+Once sharding is on, only this generator may hand out ids: dropIdentityDefaults() takes the identity default off
+cash_card.ID on every shard at startup, so an insert that bypasses the generator fails instead of taking a small id
+another shard (or an older card) already has.
+ */
+public class ShardedIdGenerator implements BeforeConvertCallback<CashCard> {
+    public static final int MAX_SHARDS = 1024;
+    public static final long FIRST_ID = 1L << 52;
+    private static final int BLOCK_SIZE = 100;
+
+    private final Shards shards;
+    private final JdbcTemplate jdbcTemplate;
+    // Per shard, the next number to hand out and the end of its current block
+    private final long[] next;
+    private final long[] blockEnd;
+
+    public ShardedIdGenerator(Shards shards, JdbcTemplate jdbcTemplate) {
+        if (shards.count() > MAX_SHARDS) {
+            throw new IllegalArgumentException("At most " + MAX_SHARDS + " shards are supported, not " + shards.count());
+        }
+        this.shards = shards;
+        this.jdbcTemplate = jdbcTemplate;
+        this.next = new long[MAX_SHARDS];
+        this.blockEnd = new long[MAX_SHARDS];
+    }
+
+    @Override
+    public CashCard onBeforeConvert(CashCard cashCard) {
+        if (cashCard.id() != null) {
+            return cashCard;
+        }
+        return new CashCard(nextIds(1).get(0), cashCard.amount(), cashCard.owner(), cashCard.version());
+    }
+
+    // Ids on the shard the current thread works on, which is also where its transaction's connection is
+    public synchronized List<Long> nextIds(int count) {
+        int shard = shards.current();
+        List<Long> ids = new ArrayList<>(count);
+        while (ids.size() < count) {
+            if (next[shard] == blockEnd[shard]) {
+                long block = Shards.onShard(shard, () ->
+                        jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR cash_card_id_block_seq", Long.class));
+                next[shard] = block * BLOCK_SIZE;
+                blockEnd[shard] = next[shard] + BLOCK_SIZE;
+            }
+            ids.add(FIRST_ID + next[shard]++ * MAX_SHARDS + shard);
+        }
+        return ids;
+    }
+
+    // Called once at startup, before any card is inserted; shards whose ID has no identity any more are left alone
+    public void dropIdentityDefaults() {
+        for (int shard = 0; shard < shards.count(); shard++) {
+            Shards.onShard(shard, () -> {
+                boolean identity = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS "
+                        + "WHERE UPPER(TABLE_NAME) = 'CASH_CARD' AND UPPER(COLUMN_NAME) = 'ID' AND IS_IDENTITY = 'YES'",
+                        Integer.class) > 0;
+                if (identity) {
+                    jdbcTemplate.execute("ALTER TABLE cash_card ALTER COLUMN id DROP IDENTITY");
+                }
+                return null;
+            });
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package aidenwaring.intro.cashcard.sharding;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Supplier;
+
+/*
+The shard databases, and which one holds an owner's cards and summary.
+
+Owners are spread over the shards by jump consistent hashing (Lamping and Veach) of their name:
+going from N to N + 1 shards moves only about 1 / (N + 1) of the owners, all of them to the new shard,
+instead of nearly all of them as hash % N would. ShardRebalancer moves their rows afterwards.
+
+Which shard the current thread works on (see current()) is, in order:
+- one picked explicitly with onShard(), for jobs that go through every shard,
+- the shard of an owner named with forOwner(), for work done on an owner's behalf outside their request,
+- the shard of the authenticated principal, since every request only ever touches the principal's own cards,
+- otherwise the home shard, which also holds the tables that aren't partitioned by owner (cash_card_user).
+ */
+public class Shards implements AutoCloseable {
+    public static final int HOME_SHARD = 0;
+
+    private static final ThreadLocal<Integer> explicitShard = new ThreadLocal<>();
+    private static final ThreadLocal<String> explicitOwner = new ThreadLocal<>();
+
+    private final List<HikariDataSource> dataSources;
+
+    public Shards(List<HikariDataSource> dataSources) {
+        this.dataSources = List.copyOf(dataSources);
+    }
+
+    public int count() {
+        return dataSources.size();
+    }
+
+    public HikariDataSource dataSource(int shard) {
+        return dataSources.get(shard);
+    }
+
+    public int shardOf(String owner) {
+        return jumpConsistentHash(fnv1a64(owner), count());
+    }
+
+    public int current() {
+        Integer shard = explicitShard.get();
+        if (shard != null) {
+            return shard;
+        }
+        String owner = explicitOwner.get();
+        if (owner == null) {
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            owner = authentication == null ? null : authentication.getName();
+        }
+        return owner == null ? HOME_SHARD : shardOf(owner);
+    }
+
+    public static <T> T onShard(int shard, Supplier<T> work) {
+        Integer previous = explicitShard.get();
+        explicitShard.set(shard);
+        try {
+            return work.get();
+        } finally {
+            explicitShard.set(previous);
+        }
+    }
+
+    // Harmless without sharding: nothing reads the owner then
+    public static <T> T forOwner(String owner, Supplier<T> work) {
+        String previous = explicitOwner.get();
+        explicitOwner.set(owner);
+        try {
+            return work.get();
+        } finally {
+            explicitOwner.set(previous);
+        }
+    }
+
+    @Override
+    public void close() {
+        dataSources.forEach(HikariDataSource::close);
+    }
+
+    // https://arxiv.org/abs/1406.2294
+    static int jumpConsistentHash(long key, int buckets) {
+        long bucket = -1;
+        long next = 0;
+        while (next < buckets) {
+            bucket = next;
+            key = key * 2862933555777941757L + 1;
+            next = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) bucket;
+    }
+
+    // String.hashCode() is only 32 bits and clusters for similar names; jump hashing wants a well-mixed 64-bit key
+    private static long fnv1a64(String owner) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : owner.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,102 @@
+package aidenwaring.intro.cashcard;
+
+import aidenwaring.intro.cashcard.repository.CashCardUserRepository;
+import aidenwaring.intro.cashcard.security.CachingAuthenticationProvider;
+import aidenwaring.intro.cashcard.security.JdbcUserIndex;
+import aidenwaring.intro.cashcard.security.VerifiedCredentialCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CachingAuthenticationProviderTest {
+    // Counts how many times the (expensive) BCrypt comparison actually runs
+    private final AtomicInteger passwordChecks = new AtomicInteger();
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private PasswordEncoder passwordEncoder;
+    private JdbcUserIndex users;
+    private CachingAuthenticationProvider provider;
+
+    @BeforeEach
+    void setUp() {
+        passwordEncoder = new BCryptPasswordEncoder(4) {
+            @Override
+            public boolean matches(CharSequence rawPassword, String encodedPassword) {
+                passwordChecks.incrementAndGet();
+                return super.matches(rawPassword, encodedPassword);
+            }
+        };
+        // sarah1's login (password abc123) comes from data.sql
+        database = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .addScripts("schema.sql", "data.sql")
+                .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        VerifiedCredentialCache verifiedCredentials = new VerifiedCredentialCache(100, Duration.ofMinutes(5));
+        users = new JdbcUserIndex(new CashCardUserRepository(jdbcTemplate, 100), verifiedCredentials, Duration.ofMinutes(1));
+
+        DaoAuthenticationProvider passwordCheck = new DaoAuthenticationProvider();
+        passwordCheck.setUserDetailsService(users);
+        passwordCheck.setPasswordEncoder(passwordEncoder);
+        provider = new CachingAuthenticationProvider(passwordCheck, verifiedCredentials);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void shouldOnlyCheckThePasswordHashOnceForRepeatedCredentials() {
+        Authentication first = provider.authenticate(login("sarah1", "abc123"));
+        Authentication second = provider.authenticate(login("sarah1", "abc123"));
+
+        assertThat(first.isAuthenticated()).isTrue();
+        assertThat(second.isAuthenticated()).isTrue();
+        assertThat(second.getName()).isEqualTo("sarah1");
+        assertThat(passwordChecks).hasValue(1);
+    }
+
+    @Test
+    void shouldStillRejectAWrongPasswordForACachedUser() {
+        provider.authenticate(login("sarah1", "abc123"));
+
+        assertThatThrownBy(() -> provider.authenticate(login("sarah1", "BAD-PASSWORD")))
+                .isInstanceOf(BadCredentialsException.class);
+    }
+
+    @Test
+    void shouldCheckThePasswordAgainAfterTheUserChanges() {
+        provider.authenticate(login("sarah1", "abc123"));
+        jdbcTemplate.update("UPDATE cash_card_user SET password = ?, updated_at = CURRENT_TIMESTAMP WHERE username = 'sarah1'",
+                passwordEncoder.encode("def456"));
+        users.refresh();
+
+        // The old password must no longer work, even though it was cached
+        assertThatThrownBy(() -> provider.authenticate(login("sarah1", "abc123")))
+                .isInstanceOf(BadCredentialsException.class);
+        assertThat(provider.authenticate(login("sarah1", "def456")).isAuthenticated()).isTrue();
+    }
+
+    private static Authentication login(String username, String password) {
+        return UsernamePasswordAuthenticationToken.unauthenticated(username, password);
+    }
+}
@@ -0,0 +1,115 @@
+package aidenwaring.intro.cashcard;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+The same endpoints as CashCardControllerTest, asked for and sent as CBOR (application/cbor).
+A plain CBOR ObjectMapper plays the client, so nothing of our own (de)serializers is on this side.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class CashCardCborTest {
+    private static final MediaType CBOR = MediaType.valueOf("application/cbor");
+
+    @Autowired
+    TestRestTemplate restTemplate;
+
+    private final ObjectMapper cbor = new ObjectMapper(new CBORFactory());
+
+    @Test
+    void shouldReturnACashCardAsCborWhenAskedFor() throws IOException {
+        ResponseEntity<byte[]> response = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .exchange("/cashcards/99", HttpMethod.GET, accept(CBOR), byte[].class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getHeaders().getContentType()).isEqualTo(CBOR);
+
+        JsonNode cashCard = cbor.readTree(response.getBody());
+        assertThat(cashCard.get("id").longValue()).isEqualTo(99);
+        // An exact decimal, not a float
+        assertThat(cashCard.get("amount").isBigDecimal()).isTrue();
+        assertThat(cashCard.get("amount").decimalValue()).isEqualByComparingTo("123.45");
+        assertThat(cashCard.get("owner").textValue()).isEqualTo("sarah1");
+        assertThat(cashCard.has("version")).isFalse();
+
+        ResponseEntity<byte[]> json = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .exchange("/cashcards/99", HttpMethod.GET, accept(MediaType.APPLICATION_JSON), byte[].class);
+        assertThat(response.getBody().length).isLessThan(json.getBody().length);
+    }
+
+    @Test
+    void shouldReturnAPageOfCashCardsAsCbor() throws IOException {
+        ResponseEntity<byte[]> response = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .exchange("/cashcards", HttpMethod.GET, accept(CBOR), byte[].class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+        JsonNode page = cbor.readTree(response.getBody());
+        assertThat(page.size()).isEqualTo(3);
+        assertThat(List.of(page.get(0).get("amount").decimalValue(), page.get(1).get("amount").decimalValue(),
+                page.get(2).get("amount").decimalValue()))
+                .usingElementComparator(BigDecimal::compareTo)
+                .containsExactly(new BigDecimal("1.00"), new BigDecimal("123.45"), new BigDecimal("150.00"));
+    }
+
+    @Test
+    void shouldCreateCashCardsSentAsCbor() throws IOException {
+        // A decimal fraction, and a whole number like 5 meaning 5.00, as in JSON
+        Map<Object, Double> amounts = Map.of(new BigDecimal("250.10"), 250.10, 5, 5.00);
+        for (Map.Entry<Object, Double> amount : amounts.entrySet()) {
+            ResponseEntity<Void> created = restTemplate
+                    .withBasicAuth("sarah1", "abc123")
+                    .exchange("/cashcards", HttpMethod.POST, cborBody(Map.of("amount", amount.getKey())), Void.class);
+            assertThat(created.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+
+            ResponseEntity<String> response = restTemplate
+                    .withBasicAuth("sarah1", "abc123")
+                    .getForEntity(created.getHeaders().getLocation(), String.class);
+            DocumentContext documentContext = JsonPath.parse(response.getBody());
+            assertThat(documentContext.read("$.amount", Double.class)).isEqualTo(amount.getValue());
+        }
+    }
+
+    @Test
+    void shouldRejectAmountsWithMoreThanTwoDecimalPlaces() throws IOException {
+        ResponseEntity<Void> response = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .exchange("/cashcards/99", HttpMethod.PUT, cborBody(Map.of("amount", new BigDecimal("1.234"))), Void.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    private static HttpEntity<Void> accept(MediaType mediaType) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setAccept(List.of(mediaType));
+        return new HttpEntity<>(headers);
+    }
+
+    private HttpEntity<byte[]> cborBody(Object body) throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(CBOR);
+        return new HttpEntity<>(cbor.writeValueAsBytes(body), headers);
+    }
+}
@@ -0,0 +1,155 @@
+package aidenwaring.intro.cashcard;
+
+import aidenwaring.intro.cashcard.events.ApplicationEventSink.CashCardEventsPublished;
+import aidenwaring.intro.cashcard.events.CashCardChangeStream;
+import aidenwaring.intro.cashcard.record.CashCard;
+import aidenwaring.intro.cashcard.record.CashCardEvent;
+import aidenwaring.intro.cashcard.record.Money;
+import aidenwaring.intro.cashcard.repository.CashCardEventRepository;
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class CashCardChangesTest {
+    @Autowired
+    TestRestTemplate restTemplate;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    PublishedEvents publishedEvents;
+
+    @Autowired
+    CashCardEventRepository eventRepository;
+
+    @LocalServerPort
+    int port;
+
+    // TestRestTemplate reads a response to the end, which an event stream never reaches
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @TestConfiguration
+    static class PublishedEvents {
+        final BlockingQueue<CashCardEvent> events = new LinkedBlockingQueue<>();
+
+        @EventListener
+        void on(CashCardEventsPublished published) {
+            events.addAll(published.events());
+        }
+    }
+
+    @Test
+    void shouldStreamAnOwnersChangesAndResumeAfterAnOffset() throws Exception {
+        URI location = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .postForLocation("/cashcards", new CashCard(null, Money.parse("250.00"), null));
+        restTemplate
+                .withBasicAuth("kumar2", "xyz789")
+                .exchange("/cashcards/102", HttpMethod.PUT, new HttpEntity<>(new CashCard(null, Money.parse("5.00"), null)), Void.class);
+        restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .exchange("/cashcards/99", HttpMethod.PUT, new HttpEntity<>(new CashCard(null, Money.parse("1.00"), null)), Void.class);
+        restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .exchange(location, HttpMethod.DELETE, null, Void.class);
+
+        List<DocumentContext> changes = readChanges("?since=0", null, 3);
+        assertThat(changes).extracting(change -> change.read("$.type", String.class))
+                .containsExactly("CREATED", "UPDATED", "DELETED");
+        assertThat(changes).extracting(change -> change.read("$.owner", String.class)).containsOnly("sarah1");
+        assertThat(changes.get(0).read("$.amount", Double.class)).isEqualTo(250.00);
+        assertThat(changes.get(1).read("$.id", Integer.class)).isEqualTo(99);
+        assertThat(changes.get(2).read("$.amount", Double.class)).isNull();
+
+        // The way EventSource resumes after a dropped connection
+        String firstOffset = String.valueOf(changes.get(0).read("$.offset", Long.class));
+        assertThat(readChanges("", firstOffset, 2))
+                .extracting(change -> change.read("$.type", String.class))
+                .containsExactly("UPDATED", "DELETED");
+    }
+
+    @Test
+    void shouldPublishChangesOnTheInProcessBus() throws Exception {
+        restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .exchange("/cashcards/99", HttpMethod.PUT, new HttpEntity<>(new CashCard(null, Money.parse("19.99"), null)), Void.class);
+
+        CashCardEvent event = publishedEvents.events.poll(5, TimeUnit.SECONDS);
+        assertThat(event).isNotNull();
+        assertThat(event.type()).isEqualTo(CashCardEvent.Type.UPDATED);
+        assertThat(event.id()).isEqualTo(99L);
+        assertThat(event.amount()).isEqualTo(Money.parse("19.99"));
+    }
+
+    @Test
+    void shouldNotResumeFromAnOffsetWhoseChangesWerePruned() throws Exception {
+        jdbcTemplate.update("UPDATE cash_card_event_relay SET position = 10 WHERE name = 'pruned'");
+
+        HttpResponse<Void> response = client.send(changesRequest("?since=3", null), HttpResponse.BodyHandlers.discarding());
+        assertThat(response.statusCode()).isEqualTo(410);
+    }
+
+    @Test
+    void shouldTurnAwayStreamsPastTheMaximumSubscriptions() throws Exception {
+        CashCardChangeStream changeStream = new CashCardChangeStream(eventRepository, Duration.ofMinutes(1), 100, 1, 1);
+        try {
+            assertThat(changeStream.subscribe("sarah1", 0)).isNotNull();
+            assertThat(changeStream.subscribe("kumar2", 0)).isNull();
+        } finally {
+            changeStream.destroy();
+        }
+    }
+
+    // Reads the first `count` events of the stream, then hangs up
+    private List<DocumentContext> readChanges(String query, String lastEventId, int count) throws Exception {
+        HttpResponse<Stream<String>> response = client.send(changesRequest(query, lastEventId), HttpResponse.BodyHandlers.ofLines());
+        assertThat(response.statusCode()).isEqualTo(200);
+        try (Stream<String> lines = response.body()) {
+            return CompletableFuture.supplyAsync(() -> lines
+                            .filter(line -> line.startsWith("data:"))
+                            .map(line -> JsonPath.parse(line.substring("data:".length())))
+                            .limit(count)
+                            .toList())
+                    .get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private HttpRequest changesRequest(String query, String lastEventId) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/cashcards/changes" + query))
+                .header("Accept", "text/event-stream")
+                .header("Authorization", "Basic " + Base64.getEncoder().encodeToString("sarah1:abc123".getBytes(StandardCharsets.UTF_8)));
+        if (lastEventId != null) {
+            request.header("Last-Event-ID", lastEventId);
+        }
+        return request.build();
+    }
+}
@@ -1,17 +1,23 @@
 package aidenwaring.intro.cashcard;
 
 import aidenwaring.intro.cashcard.record.CashCard;
+import aidenwaring.intro.cashcard.record.Money;
+import aidenwaring.intro.cashcard.service.CashCardSummaryService;
 import com.jayway.jsonpath.DocumentContext;
 import com.jayway.jsonpath.JsonPath;
+import io.micrometer.core.instrument.MeterRegistry;
 import net.minidev.json.JSONArray;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
 
 import java.net.URI;
@@ -30,13 +36,22 @@ class CashCardControllerTest {
     @Autowired
     TestRestTemplate restTemplate;
 
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    CashCardSummaryService cashCardSummaryService;
+
     /*
         CREATE
      */
 
     @Test
     void shouldCreateANewCashCard() {
-        CashCard cashCard = new CashCard(null, 250.00, null);
+        CashCard cashCard = new CashCard(null, Money.parse("250.00"), null);
         //Create the post request
         ResponseEntity<Void> createResponse = restTemplate
                 .withBasicAuth("sarah1", "abc123")
@@ -62,6 +77,58 @@ class CashCardControllerTest {
         assertThat(amount).isEqualTo(250.00);
     }
 
+    @Test
+    void shouldCreateManyCashCardsInOneBatch() {
+        CashCard[] cashCards = {new CashCard(null, Money.parse("10.00"), null), new CashCard(null, Money.parse("20.00"), null)};
+        ResponseEntity<String> response = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .postForEntity("/cashcards/batch", cashCards, String.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+        DocumentContext documentContext = JsonPath.parse(response.getBody());
+        JSONArray statuses = documentContext.read("$..status");
+        assertThat(statuses).containsExactly(201, 201);
+
+        // Every created card can be fetched by the id reported for it
+        Number id = documentContext.read("$[1].id");
+        ResponseEntity<String> getResponse = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/" + id, String.class);
+        assertThat(getResponse.getStatusCode()).isEqualTo(HttpStatus.OK);
+        Double amount = JsonPath.parse(getResponse.getBody()).read("$.amount");
+        assertThat(amount).isEqualTo(20.00);
+    }
+
+    @Test
+    void shouldReportWhatWasCommittedWhenABatchHasMalformedJson() {
+        // The third line isn't JSON, so the fourth is never looked at
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_NDJSON);
+        HttpEntity<String> request = new HttpEntity<>("""
+                {"amount": 10.00}
+                {"amount": 20.00}
+                {"amount": 30.00
+                {"amount": 40.00}
+                """, headers);
+        ResponseEntity<String> response = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .exchange("/cashcards/batch", HttpMethod.POST, request, String.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+        DocumentContext documentContext = JsonPath.parse(response.getBody());
+        JSONArray statuses = documentContext.read("$..status");
+        assertThat(statuses).containsExactly(201, 201, 400);
+        String error = documentContext.read("$[2].error");
+        assertThat(error).isNotBlank();
+
+        // Only the two cards reported as created were
+        ResponseEntity<String> getResponse = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards", String.class);
+        JSONArray amounts = JsonPath.parse(getResponse.getBody()).read("$..amount");
+        assertThat(amounts).containsExactlyInAnyOrder(123.45, 1.00, 150.00, 10.00, 20.00);
+    }
+
     /*
         GET (READ)
      */
@@ -98,6 +165,38 @@ class CashCardControllerTest {
         assertThat(page.size()).isEqualTo(1);
     }
 
+    @Test
+    void shouldOnlyReturnTheTotalWhenAskedFor() {
+        ResponseEntity<String> response = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards?page=0&size=1", String.class);
+        assertThat(response.getHeaders().containsKey("X-Total-Count")).isFalse();
+
+        response = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards?page=0&size=1&withTotal=true", String.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getHeaders().getFirst("X-Total-Count")).isEqualTo("3");
+        String eTag = response.getHeaders().getETag();
+
+        // A card that isn't on this page still changes the total, and so the page's ETag
+        restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .postForEntity("/cashcards", new CashCard(null, Money.parse("999.00"), null), Void.class);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(eTag);
+        response = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .exchange("/cashcards?page=0&size=1&withTotal=true", HttpMethod.GET, new HttpEntity<>(headers), String.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getHeaders().getFirst("X-Total-Count")).isEqualTo("4");
+
+        response = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards?after=&size=1&withTotal=true", String.class);
+        assertThat(response.getHeaders().getFirst("X-Total-Count")).isEqualTo("4");
+    }
+
     @Test
     void shouldReturnASortedPageOfCashCardsWithNoParametersAndUseDefaultValues() {
         ResponseEntity<String> response = restTemplate
@@ -128,6 +227,126 @@ class CashCardControllerTest {
         assertThat(amount).isEqualTo(150.00);
     }
 
+    @Test
+    void shouldReturnCashCardsOneSliceAtATimeUsingACursor() {
+        ResponseEntity<String> response = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards?after=&size=2", String.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+        JSONArray amounts = JsonPath.parse(response.getBody()).read("$..amount");
+        assertThat(amounts).containsExactly(1.00, 123.45);
+
+        // The Link header carries the cursor for the next slice: <http://...?after=...&size=2>; rel="next"
+        String link = response.getHeaders().getFirst(HttpHeaders.LINK);
+        assertThat(link).endsWith("rel=\"next\"");
+        String next = link.substring(link.indexOf('<') + 1, link.indexOf('>'));
+
+        response = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity(URI.create(next), String.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        amounts = JsonPath.parse(response.getBody()).read("$..amount");
+        assertThat(amounts).containsExactly(150.00);
+        assertThat(response.getHeaders().containsKey(HttpHeaders.LINK)).isFalse();
+    }
+
+    @Test
+    void shouldRejectAMalformedCursor() {
+        ResponseEntity<String> response = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards?after=not-a-cursor", String.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    @Test
+    void shouldReturnTheSummaryOfThePrincipalsCashCards() {
+        ResponseEntity<String> response = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/summary", String.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+        DocumentContext documentContext = JsonPath.parse(response.getBody());
+        Number count = documentContext.read("$.count");
+        assertThat(count).isEqualTo(3);
+        Double sum = documentContext.read("$.sum");
+        assertThat(sum).isEqualTo(274.45);
+        Double min = documentContext.read("$.min");
+        assertThat(min).isEqualTo(1.00);
+        Double max = documentContext.read("$.max");
+        assertThat(max).isEqualTo(150.00);
+    }
+
+    @Test
+    void shouldKeepTheSummaryUpToDateWhenCashCardsAreWritten() {
+        restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .postForEntity("/cashcards", new CashCard(null, Money.parse("250.00"), null), Void.class);
+        // 100 held the smallest amount, 101 the largest
+        restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .exchange("/cashcards/100", HttpMethod.PUT, new HttpEntity<>(new CashCard(null, Money.parse("500.00"), null)), Void.class);
+        restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .exchange("/cashcards/101", HttpMethod.DELETE, null, Void.class);
+
+        ResponseEntity<String> response = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/summary", String.class);
+        DocumentContext documentContext = JsonPath.parse(response.getBody());
+        Number count = documentContext.read("$.count");
+        assertThat(count).isEqualTo(3);
+        Double sum = documentContext.read("$.sum");
+        assertThat(sum).isEqualTo(873.45);
+        Double min = documentContext.read("$.min");
+        assertThat(min).isEqualTo(123.45);
+        Double max = documentContext.read("$.max");
+        assertThat(max).isEqualTo(500.00);
+
+        // Nothing for the verification job to fix
+        assertThat(cashCardSummaryService.verifyAll()).isZero();
+    }
+
+    @Test
+    void shouldSetTheMinAndMaxAgainAfterAnOwnersLastCashCardWasDeleted() {
+        // 102 is kumar2's only card, so their summary is left with no min and max
+        restTemplate
+                .withBasicAuth("kumar2", "xyz789")
+                .exchange("/cashcards/102", HttpMethod.DELETE, null, Void.class);
+        restTemplate
+                .withBasicAuth("kumar2", "xyz789")
+                .postForEntity("/cashcards", new CashCard(null, Money.parse("75.00"), null), Void.class);
+
+        ResponseEntity<String> response = restTemplate
+                .withBasicAuth("kumar2", "xyz789")
+                .getForEntity("/cashcards/summary", String.class);
+        DocumentContext documentContext = JsonPath.parse(response.getBody());
+        Number count = documentContext.read("$.count");
+        assertThat(count).isEqualTo(1);
+        Double min = documentContext.read("$.min");
+        assertThat(min).isEqualTo(75.00);
+        Double max = documentContext.read("$.max");
+        assertThat(max).isEqualTo(75.00);
+        assertThat(cashCardSummaryService.verifyAll()).isZero();
+    }
+
+    @Test
+    void shouldRebuildASummaryThatHasDrifted() {
+        // Written behind the application's back, so the summary doesn't know about it
+        jdbcTemplate.update("INSERT INTO cash_card (id, amount, owner) VALUES (1000000, 99900, 'sarah1')");
+
+        assertThat(cashCardSummaryService.verifyAll()).isEqualTo(1);
+
+        ResponseEntity<String> response = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/summary", String.class);
+        DocumentContext documentContext = JsonPath.parse(response.getBody());
+        Number count = documentContext.read("$.count");
+        assertThat(count).isEqualTo(4);
+        Double max = documentContext.read("$.max");
+        assertThat(max).isEqualTo(999.00);
+    }
+
     @Test
     void shouldReturnACashCardWhenDataIsSaved() {
         ResponseEntity<String> response = restTemplate
@@ -146,6 +365,48 @@ class CashCardControllerTest {
         assertThat(amount).isEqualTo(123.45);
     }
 
+    @Test
+    void shouldReturnNotModifiedWhenACashCardHasNotChanged() {
+        ResponseEntity<String> response = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/99", String.class);
+        String eTag = response.getHeaders().getETag();
+        assertThat(eTag).isNotNull();
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(eTag);
+        response = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .exchange("/cashcards/99", HttpMethod.GET, new HttpEntity<>(headers), String.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(response.getBody()).isNull();
+
+        // Once the card changes, so does its ETag
+        restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .exchange("/cashcards/99", HttpMethod.PUT, new HttpEntity<>(new CashCard(null, Money.parse("19.99"), null)), Void.class);
+        response = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .exchange("/cashcards/99", HttpMethod.GET, new HttpEntity<>(headers), String.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    void shouldReturnNotModifiedWhenAPageOfCashCardsHasNotChanged() {
+        ResponseEntity<String> response = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards", String.class);
+        String eTag = response.getHeaders().getETag();
+        assertThat(eTag).isNotNull();
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(eTag);
+        response = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .exchange("/cashcards", HttpMethod.GET, new HttpEntity<>(headers), String.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+    }
+
     @Test
     void shouldNotReturnACashCardWithAnUnknownId() {
         ResponseEntity<String> response = restTemplate
@@ -192,7 +453,7 @@ class CashCardControllerTest {
     @Test
     @DirtiesContext
     void shouldUpdateAnExistingCashCard() {
-        CashCard cashCardUpdate = new CashCard(null, 19.99, null);
+        CashCard cashCardUpdate = new CashCard(null, Money.parse("19.99"), null);
 //        Using HttpEntity and .exchange as .putForEntity() does not exist
         HttpEntity<CashCard> request = new HttpEntity<>(cashCardUpdate);
         ResponseEntity<Void> response = restTemplate
@@ -214,9 +475,75 @@ class CashCardControllerTest {
         assertThat(amount).isEqualTo(19.99);
     }
 
+    @Test
+    void shouldNotReturnAStaleCashCardAfterItIsUpdated() {
+        // The first GET puts card 99 in the cache
+        ResponseEntity<String> getResponse = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/99", String.class);
+        assertThat(getResponse.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+        HttpEntity<CashCard> request = new HttpEntity<>(new CashCard(null, Money.parse("19.99"), null));
+        restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .exchange("/cashcards/99", HttpMethod.PUT, request, Void.class);
+
+        getResponse = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/99", String.class);
+        Double amount = JsonPath.parse(getResponse.getBody()).read("$.amount");
+        assertThat(amount).isEqualTo(19.99);
+    }
+
+    @Test
+    void shouldServeRepeatedReadsOfACashCardFromTheCache() {
+        for (int i = 0; i < 3; i++) {
+            restTemplate
+                    .withBasicAuth("sarah1", "abc123")
+                    .getForEntity("/cashcards/99", String.class);
+        }
+        double hits = meterRegistry.get("cache.gets")
+                .tag("cache", "cashCards")
+                .tag("result", "hit")
+                .functionCounter()
+                .count();
+        assertThat(hits).isEqualTo(2);
+    }
+
+    @Test
+    void shouldOnlyUpdateACashCardWhoseVersionMatchesIfMatch() {
+        ResponseEntity<String> getResponse = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/99", String.class);
+        String eTag = getResponse.getHeaders().getETag();
+        assertThat(eTag).isNotNull();
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfMatch(eTag);
+        HttpEntity<CashCard> request = new HttpEntity<>(new CashCard(null, Money.parse("19.99"), null), headers);
+        ResponseEntity<Void> response = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .exchange("/cashcards/99", HttpMethod.PUT, request, Void.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+
+        // Someone else's update got in first: the same If-Match no longer matches, so this one would lose it
+        request = new HttpEntity<>(new CashCard(null, Money.parse("29.99"), null), headers);
+        response = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .exchange("/cashcards/99", HttpMethod.PUT, request, Void.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED);
+
+        getResponse = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/99", String.class);
+        Double amount = JsonPath.parse(getResponse.getBody()).read("$.amount");
+        assertThat(amount).isEqualTo(19.99);
+        assertThat(getResponse.getHeaders().getETag()).isNotEqualTo(eTag);
+    }
+
     @Test
     void shouldNotUpdateACashCardThatDoesNotExist() {
-        CashCard cashCardUpdate = new CashCard(null, 3.00, null);
+        CashCard cashCardUpdate = new CashCard(null, Money.parse("3.00"), null);
         HttpEntity<CashCard> request = new HttpEntity<>(cashCardUpdate);
         ResponseEntity<Void> response = restTemplate
                 .withBasicAuth("sarah1", "abc123")
@@ -227,7 +554,7 @@ class CashCardControllerTest {
 
     @Test
     void shouldNotUpdateACashCardThatIsOwnedBySomeoneElse() {
-        CashCard cashCardUpdate = new CashCard(null, 333.33, null);
+        CashCard cashCardUpdate = new CashCard(null, Money.parse("333.33"), null);
         HttpEntity<CashCard> request = new HttpEntity<>(cashCardUpdate);
         ResponseEntity<Void> response = restTemplate
                 .withBasicAuth("sarah1", "abc123")
@@ -236,6 +563,37 @@ class CashCardControllerTest {
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
     }
 
+    @Test
+    void shouldOnlyBatchUpdateCashCardsThePrincipalOwns() {
+        // Sent as NDJSON: one card per line
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_NDJSON);
+        HttpEntity<String> request = new HttpEntity<>("""
+                {"id": 99, "amount": 42.00}
+                {"id": 102, "amount": 42.00}
+                """, headers);
+        ResponseEntity<String> response = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .exchange("/cashcards/batch", HttpMethod.PUT, request, String.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+        JSONArray statuses = JsonPath.parse(response.getBody()).read("$..status");
+        // 102 belongs to kumar2, so it is reported as not found
+        assertThat(statuses).containsExactly(204, 404);
+
+        ResponseEntity<String> getResponse = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/99", String.class);
+        Double amount = JsonPath.parse(getResponse.getBody()).read("$.amount");
+        assertThat(amount).isEqualTo(42.00);
+
+        getResponse = restTemplate
+                .withBasicAuth("kumar2", "xyz789")
+                .getForEntity("/cashcards/102", String.class);
+        amount = JsonPath.parse(getResponse.getBody()).read("$.amount");
+        assertThat(amount).isEqualTo(200.00);
+    }
+
     /*
         DELETE
      */
@@ -272,6 +630,24 @@ class CashCardControllerTest {
         assertThat(getResponse.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
     }
 
+    @Test
+    void shouldBatchDeleteCashCards() {
+        HttpEntity<Long[]> request = new HttpEntity<>(new Long[]{99L, 100L, 102L});
+        ResponseEntity<String> response = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .exchange("/cashcards/batch", HttpMethod.DELETE, request, String.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+        JSONArray statuses = JsonPath.parse(response.getBody()).read("$..status");
+        assertThat(statuses).containsExactly(204, 204, 404);
+
+        ResponseEntity<String> getResponse = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards", String.class);
+        JSONArray ids = JsonPath.parse(getResponse.getBody()).read("$..id");
+        assertThat(ids).containsExactly(101);
+    }
+
     @Test
     void shouldNotDeleteACashCardThatDoesNotExist() {
         ResponseEntity<Void> deleteResponse = restTemplate
@@ -0,0 +1,75 @@
+package aidenwaring.intro.cashcard;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.io.InputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+GET /cashcards/export must stream: the whole export is never held in memory on the server.
+
+By default this exports a modest number of cards, so it runs with the rest of the tests.
+The exportSoakTest Gradle task runs it again with millions of cards, a file-backed H2 database and a small heap;
+if the export was materialized as a List, that run would fail with an OutOfMemoryError.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@DirtiesContext
+class CashCardExportTest {
+    private static final long ROWS = Long.getLong("cashcard.export-test.rows", 10_000);
+    private static final long ROWS_PER_INSERT = 100_000;
+
+    @Autowired
+    TestRestTemplate restTemplate;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    void shouldExportEveryCashCardOfTheOwnerAsNdjson() {
+        // Explicit ids well above the ones in data.sql, so they never collide with generated ones
+        for (long first = 1; first <= ROWS; first += ROWS_PER_INSERT) {
+            jdbcTemplate.update("INSERT INTO cash_card (id, amount, owner) SELECT 1000000 + X, X, 'kumar2' FROM SYSTEM_RANGE(?, ?)",
+                    first, Math.min(first + ROWS_PER_INSERT - 1, ROWS));
+        }
+
+        // Count lines as they arrive instead of reading the body into a String
+        Long lines = restTemplate
+                .withBasicAuth("kumar2", "xyz789")
+                .execute("/cashcards/export", HttpMethod.GET, null, response -> {
+                    assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+                    long count = 0;
+                    byte[] buffer = new byte[8192];
+                    try (InputStream body = response.getBody()) {
+                        for (int read = body.read(buffer); read != -1; read = body.read(buffer)) {
+                            for (int i = 0; i < read; i++) {
+                                if (buffer[i] == '\n') {
+                                    count++;
+                                }
+                            }
+                        }
+                    }
+                    return count;
+                });
+
+        // kumar2 already owns card 102 from data.sql
+        assertThat(lines).isEqualTo(ROWS + 1);
+    }
+
+    @Test
+    void shouldOnlyExportTheOwnersCashCards() {
+        ResponseEntity<String> response = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/export", String.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody().lines()).hasSize(3).allMatch(line -> line.contains("\"owner\":\"sarah1\""));
+    }
+}
@@ -0,0 +1,124 @@
+package aidenwaring.intro.cashcard;
+
+import aidenwaring.intro.cashcard.record.CashCard;
+import aidenwaring.intro.cashcard.record.Money;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+Retries of POST /cashcards with an Idempotency-Key, against the default in-memory store.
+JdbcIdempotencyStoreTest runs the same tests against the database-backed one.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class CashCardIdempotencyTest {
+    @Autowired
+    TestRestTemplate restTemplate;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    void shouldCreateOnlyOneCashCardWhenARequestIsRetried() {
+        ResponseEntity<Void> first = create("retry-1", "250.00");
+        assertThat(first.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        assertThat(first.getHeaders().containsKey("Idempotent-Replayed")).isFalse();
+
+        ResponseEntity<Void> retry = create("retry-1", "250.00");
+        assertThat(retry.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        assertThat(retry.getHeaders().getLocation()).isEqualTo(first.getHeaders().getLocation());
+        assertThat(retry.getHeaders().getFirst("Idempotent-Replayed")).isEqualTo("true");
+        assertThat(countCashCards("sarah1")).isEqualTo(4);
+
+        // Another key is another card
+        assertThat(create("retry-2", "250.00").getHeaders().getLocation()).isNotEqualTo(first.getHeaders().getLocation());
+        assertThat(countCashCards("sarah1")).isEqualTo(5);
+    }
+
+    @Test
+    void shouldLetConcurrentRetriesWaitForTheFirstRequest() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<ResponseEntity<Void>>> responses = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                responses.add(executor.submit(() -> create("concurrent", "42.00")));
+            }
+            List<URI> locations = new ArrayList<>();
+            for (Future<ResponseEntity<Void>> response : responses) {
+                assertThat(response.get().getStatusCode()).isEqualTo(HttpStatus.CREATED);
+                locations.add(response.get().getHeaders().getLocation());
+            }
+            assertThat(locations).containsOnly(locations.get(0));
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(countCashCards("sarah1")).isEqualTo(4);
+    }
+
+    @Test
+    void shouldRejectAKeyReusedForADifferentRequest() {
+        create("reused", "250.00");
+        assertThat(create("reused", "1.00").getStatusCode()).isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+        assertThat(countCashCards("sarah1")).isEqualTo(4);
+    }
+
+    @Test
+    void shouldKeepOwnersKeysApart() {
+        URI sarahs = create("shared-key", "250.00").getHeaders().getLocation();
+        ResponseEntity<Void> kumars = restTemplate
+                .withBasicAuth("kumar2", "xyz789")
+                .postForEntity("/cashcards", request("shared-key", "250.00"), Void.class);
+        assertThat(kumars.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        assertThat(kumars.getHeaders().getLocation()).isNotEqualTo(sarahs);
+        assertThat(countCashCards("kumar2")).isEqualTo(2);
+    }
+
+    @Test
+    void shouldFailWithoutUsingUpTheKeyWhenTheCashCardCantBeCreated() {
+        // A second card for 123.45 (card 99's amount) now breaks a unique index, so creating it fails
+        jdbcTemplate.execute("CREATE UNIQUE INDEX cash_card_unique_amount ON cash_card (amount)");
+        try {
+            // An error of its own, not taken for another request holding the key
+            assertThat(create("failing", "123.45").getStatusCode()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
+        } finally {
+            jdbcTemplate.execute("DROP INDEX cash_card_unique_amount");
+        }
+        assertThat(countCashCards("sarah1")).isEqualTo(3);
+
+        assertThat(create("failing", "123.45").getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        assertThat(countCashCards("sarah1")).isEqualTo(4);
+    }
+
+    ResponseEntity<Void> create(String idempotencyKey, String amount) {
+        return restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .postForEntity("/cashcards", request(idempotencyKey, amount), Void.class);
+    }
+
+    private static HttpEntity<CashCard> request(String idempotencyKey, String amount) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Idempotency-Key", idempotencyKey);
+        return new HttpEntity<>(new CashCard(null, Money.parse(amount), null), headers);
+    }
+
+    private int countCashCards(String owner) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM cash_card WHERE owner = ?", Integer.class, owner);
+    }
+}
@@ -1,6 +1,8 @@
 package aidenwaring.intro.cashcard;
 
 import aidenwaring.intro.cashcard.record.CashCard;
+import aidenwaring.intro.cashcard.record.Money;
+import com.fasterxml.jackson.databind.exc.InvalidFormatException;
 import org.assertj.core.util.Arrays;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -11,6 +13,7 @@ import org.springframework.boot.test.json.JacksonTester;
 import java.io.IOException;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 /*
 The @JsonTest annotation marks the CashCardJsonTest as a test class
@@ -32,9 +35,9 @@ public class CashCardJsonTest {
     @BeforeEach
     void setUp() {
         cashCards = Arrays.array(
-                new CashCard(99L, 123.45, "sarah1"),
-                new CashCard(100L, 1.00, "sarah1"),
-                new CashCard(101L, 150.00, "sarah1"));
+                new CashCard(99L, Money.parse("123.45"), "sarah1"),
+                new CashCard(100L, Money.parse("1.00"), "sarah1"),
+                new CashCard(101L, Money.parse("150.00"), "sarah1"));
     }
 
     @Test
@@ -52,9 +55,9 @@ public class CashCardJsonTest {
                 }
                 """;
         assertThat(json.parse(expected))
-                .isEqualTo(new CashCard(99L, 123.45, "sarah1"));
+                .isEqualTo(new CashCard(99L, Money.parse("123.45"), "sarah1"));
         assertThat(json.parseObject(expected).id()).isEqualTo(99L);
-        assertThat(json.parseObject(expected).amount()).isEqualTo(123.45);
+        assertThat(json.parseObject(expected).amount()).isEqualTo(Money.parse("123.45"));
     }
 
     @Test
@@ -81,6 +84,56 @@ public class CashCardJsonTest {
         assertThat(json.parse(expected))
                 .isEqualTo(cashCards[0]);
         assertThat(json.parseObject(expected).id()).isEqualTo(99);
-        assertThat(json.parseObject(expected).amount()).isEqualTo(123.45);
+        assertThat(json.parseObject(expected).amount()).isEqualTo(Money.parse("123.45"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void cashCardAmountWithoutDecimalsDeserializationTest() throws IOException {
+        String expected = """
+                {
+                    "id":99,
+                    "amount":150,
+                    "owner":"sarah1"
+                }
+                """;
+        assertThat(json.parseObject(expected).amount()).isEqualTo(Money.ofMinorUnits(15000));
+    }
+
+    @Test
+    public void cashCardAmountWithMoreThanTwoDecimalsIsRejectedTest() {
+        String expected = """
+                {
+                    "id":99,
+                    "amount":123.456,
+                    "owner":"sarah1"
+                }
+                """;
+        assertThatThrownBy(() -> json.parseObject(expected)).isInstanceOf(InvalidFormatException.class);
+    }
+
+    @Test
+    public void cashCardAmountInExponentNotationDeserializationTest() throws IOException {
+        String expected = """
+                {
+                    "id":99,
+                    "amount":1.2345e2,
+                    "owner":"sarah1"
+                }
+                """;
+        assertThat(json.parseObject(expected).amount()).isEqualTo(Money.parse("123.45"));
+    }
+
+    @Test
+    public void cashCardAmountInExponentNotationTooLargeOrTooFineIsRejectedTest() {
+        for (String amount : new String[]{"1.2345e1", "1e30"}) {
+            String expected = """
+                    {
+                        "id":99,
+                        "amount":%s,
+                        "owner":"sarah1"
+                    }
+                    """.formatted(amount);
+            assertThatThrownBy(() -> json.parseObject(expected)).isInstanceOf(InvalidFormatException.class);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package aidenwaring.intro.cashcard;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Spring Boot tests use a plain in-memory meter registry unless asked to set up metrics export like in production
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureObservability
+class CashCardMetricsTest {
+    @Autowired
+    TestRestTemplate restTemplate;
+
+    @Test
+    void shouldPublishRequestRepositoryAndJsonMetricsForPrometheus() {
+        ResponseEntity<String> response = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/99", String.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+        ResponseEntity<String> scrape = restTemplate.getForEntity("/actuator/prometheus", String.class);
+        assertThat(scrape.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(scrape.getBody())
+                .contains("http_server_requests_seconds_bucket{")
+                .contains("spring_data_repository_invocations_seconds_count{")
+                .contains("cashcard_security_password_checks_seconds_count")
+                .contains("cashcard_json_write_seconds_count")
+                // One SELECT to load card 99 into the cache
+                .contains("cashcard_jdbc_statements_sum{method=\"GET\",uri=\"/cashcards/{requestedId}\",} 1.0");
+    }
+}
@@ -0,0 +1,208 @@
+package aidenwaring.intro.cashcard;
+
+import aidenwaring.intro.cashcard.record.CashCardCursor;
+import aidenwaring.intro.cashcard.repository.CashCardRepository;
+import aidenwaring.intro.cashcard.repository.CashCardSummaryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.test.annotation.DirtiesContext;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+H2's plans (EXPLAIN) for the queries behind GET /cashcards, its ?withTotal=true, and single-card lookups.
+The repository methods are called as the application calls them, and the SQL they actually send (recorded on its way
+to the database, with the parameters bound to it) is explained, so a change to a derived query, its sort or an
+@Query shows up here. None of them may scan the table: they have to stay as fast with 10 million cards of other
+owners in it (CashCardRepositoryBenchmark measures that).
+Other owners' cards are added first, so the planner has a table worth avoiding a scan of.
+ */
+@SpringBootTest
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class CashCardQueryPlanTest {
+    private static final String TABLE_SCAN = "tableScan";
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    CashCardRepository cashCardRepository;
+
+    @Autowired
+    CashCardSummaryRepository summaryRepository;
+
+    @TestConfiguration
+    static class StatementRecording {
+        @Bean
+        static BeanPostProcessor recordStatements() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (bean instanceof DataSource dataSource && !(bean instanceof StatementRecordingDataSource)) {
+                        return new StatementRecordingDataSource(dataSource);
+                    }
+                    return bean;
+                }
+            };
+        }
+    }
+
+    @BeforeEach
+    void addOtherOwnersCards() {
+        jdbcTemplate.update("INSERT INTO cash_card (id, amount, owner) "
+                + "SELECT 1000000 + X, MOD(X, 50000) + 25, 'owner-' || MOD(X, 100) FROM SYSTEM_RANGE(1, 10000)");
+        jdbcTemplate.execute("ANALYZE");
+    }
+
+    @Test
+    void shouldReadAPageFromTheCoveringIndex() {
+        // The controller's default: page 0 of 20, sorted by amount
+        String plan = planOf(() -> cashCardRepository.findByOwner("sarah1",
+                PageRequest.of(0, 20, Sort.by(Sort.Direction.ASC, "amount"))));
+        assertThat(plan).contains("CASH_CARD_OWNER_AMOUNT_ID_VERSION").doesNotContain(TABLE_SCAN);
+    }
+
+    @Test
+    void shouldSeekToTheFirstAndNextSlicesInTheIndex() {
+        String first = planOf(() -> cashCardRepository.findByOwnerAfter("sarah1", null, 20));
+        assertThat(first).contains("CASH_CARD_OWNER_AMOUNT_ID_VERSION").doesNotContain(TABLE_SCAN);
+
+        String next = planOf(() -> cashCardRepository.findByOwnerAfter("sarah1", new CashCardCursor(100, 100L), 20));
+        assertThat(next).contains("CASH_CARD_OWNER_AMOUNT_ID_VERSION").doesNotContain(TABLE_SCAN);
+    }
+
+    @Test
+    void shouldLookUpASingleCardByPrimaryKey() {
+        String plan = planOf(() -> cashCardRepository.findByIdAndOwner(99L, "sarah1"));
+        assertThat(plan).contains("PRIMARY_KEY").doesNotContain(TABLE_SCAN);
+    }
+
+    @Test
+    void shouldReadTheTotalFromTheSummaryRow() {
+        String plan = planOf(() -> summaryRepository.findByOwner("sarah1"));
+        assertThat(plan).contains("PRIMARY_KEY").doesNotContain(TABLE_SCAN);
+    }
+
+    // Runs the repository call, then explains the one statement it sent, bound to the same parameters
+    private String planOf(Runnable repositoryCall) {
+        List<RecordedStatement> statements = StatementRecordingDataSource.record(repositoryCall);
+        assertThat(statements).hasSize(1);
+        RecordedStatement statement = statements.get(0);
+        return jdbcTemplate.execute((ConnectionCallback<String>) connection -> {
+            try (PreparedStatement explain = connection.prepareStatement("EXPLAIN " + statement.sql())) {
+                for (ParameterSetter setter : statement.parameters()) {
+                    setter.applyTo(explain);
+                }
+                try (ResultSet plan = explain.executeQuery()) {
+                    plan.next();
+                    return plan.getString(1);
+                }
+            }
+        });
+    }
+
+    private record RecordedStatement(String sql, List<ParameterSetter> parameters) {
+    }
+
+    // A setString(1, "sarah1") and the like, to be replayed on the EXPLAIN statement
+    private record ParameterSetter(Method method, Object[] args) {
+
+        void applyTo(PreparedStatement statement) throws SQLException {
+            try {
+                method.invoke(statement, args);
+            } catch (ReflectiveOperationException e) {
+                throw new SQLException("Couldn't replay " + method.getName(), e);
+            }
+        }
+    }
+
+    /*
+        Records the statements the current thread prepares while record() runs, like QueryCountingDataSource counts them.
+        Other threads (the event relay, say) go through unrecorded.
+     */
+    static class StatementRecordingDataSource extends DelegatingDataSource {
+        private static final ThreadLocal<List<RecordedStatement>> recording = new ThreadLocal<>();
+
+        StatementRecordingDataSource(DataSource targetDataSource) {
+            super(targetDataSource);
+        }
+
+        static List<RecordedStatement> record(Runnable work) {
+            List<RecordedStatement> statements = new ArrayList<>();
+            recording.set(statements);
+            try {
+                work.run();
+            } finally {
+                recording.remove();
+            }
+            return statements;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return recording(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return recording(super.getConnection(username, password));
+        }
+
+        private static Connection recording(Connection connection) {
+            InvocationHandler handler = (proxy, method, args) -> {
+                Object result = invoke(connection, method, args);
+                List<RecordedStatement> statements = recording.get();
+                if (statements != null && method.getName().equals("prepareStatement")
+                        && result instanceof PreparedStatement prepared) {
+                    RecordedStatement statement = new RecordedStatement((String) args[0], new ArrayList<>());
+                    statements.add(statement);
+                    return recordingParameters(prepared, statement);
+                }
+                return result;
+            };
+            return (Connection) Proxy.newProxyInstance(
+                    StatementRecordingDataSource.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+        }
+
+        private static PreparedStatement recordingParameters(PreparedStatement prepared, RecordedStatement statement) {
+            InvocationHandler handler = (proxy, method, args) -> {
+                if (method.getName().startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                    statement.parameters().add(new ParameterSetter(method, args.clone()));
+                }
+                return invoke(prepared, method, args);
+            };
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    StatementRecordingDataSource.class.getClassLoader(), new Class<?>[]{PreparedStatement.class}, handler);
+        }
+
+        private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package aidenwaring.intro.cashcard;
+
+import aidenwaring.intro.cashcard.record.CashCard;
+import aidenwaring.intro.cashcard.ratelimit.OwnerRateLimiter;
+import aidenwaring.intro.cashcard.record.Money;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.annotation.DirtiesContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Only two writes per owner, and no refill to speak of during the test
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "cashcard.ratelimit.write.per-second=0.01",
+        "cashcard.ratelimit.write.burst=2"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class CashCardRateLimitTest {
+    @Autowired
+    TestRestTemplate restTemplate;
+
+    @Test
+    void shouldRejectAnOwnerWhoIsOverTheirRateLimit() {
+        CashCard cashCard = new CashCard(null, Money.parse("5.00"), null);
+        for (int i = 0; i < 2; i++) {
+            ResponseEntity<Void> response = restTemplate
+                    .withBasicAuth("sarah1", "abc123")
+                    .postForEntity("/cashcards", cashCard, Void.class);
+            assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        }
+
+        ResponseEntity<Void> response = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .postForEntity("/cashcards", cashCard, Void.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        assertThat(Long.parseLong(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER))).isPositive();
+
+        // Reads have a bucket of their own
+        ResponseEntity<String> getResponse = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/99", String.class);
+        assertThat(getResponse.getStatusCode()).isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    void shouldNotLimitOtherOwnersWhenOneIsOverTheirRateLimit() {
+        CashCard cashCard = new CashCard(null, Money.parse("5.00"), null);
+        for (int i = 0; i < 3; i++) {
+            restTemplate
+                    .withBasicAuth("sarah1", "abc123")
+                    .postForEntity("/cashcards", cashCard, Void.class);
+        }
+
+        ResponseEntity<Void> response = restTemplate
+                .withBasicAuth("kumar2", "xyz789")
+                .postForEntity("/cashcards", cashCard, Void.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+    }
+
+    @Test
+    void shouldRefuseLimitsThatCantBeEnforced() {
+        assertThatThrownBy(() -> new OwnerRateLimiter.Limit(0, 20)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new OwnerRateLimiter.Limit(-1, 20)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new OwnerRateLimiter.Limit(Double.NaN, 20)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new OwnerRateLimiter.Limit(Double.POSITIVE_INFINITY, 20)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new OwnerRateLimiter.Limit(10, 0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new OwnerRateLimiter.Limit(1e-12, 20)).isInstanceOf(IllegalArgumentException.class);
+        // As slow as this test's own write limit
+        assertThat(new OwnerRateLimiter.Limit(0.01, 2).burst()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,33 @@
+package aidenwaring.intro.cashcard;
+
+import aidenwaring.intro.cashcard.record.CashCard;
+import aidenwaring.intro.cashcard.record.CashCardSummary;
+import aidenwaring.intro.cashcard.record.Money;
+import aidenwaring.intro.cashcard.record.MoneyJsonDeserializer;
+import aidenwaring.intro.cashcard.record.MoneyJsonSerializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Native image problems only show up in a native build, so at least check here that the hints we rely on are registered
+class CashCardRuntimeHintsTest {
+
+    @Test
+    void shouldRegisterTheReflectionANativeImageNeeds() throws NoSuchMethodException {
+        RuntimeHints hints = new RuntimeHints();
+        new CashCardRuntimeHints().registerHints(hints, getClass().getClassLoader());
+
+        assertThat(RuntimeHintsPredicates.reflection().onConstructor(
+                CashCard.class.getDeclaredConstructor(Long.class, Money.class, String.class, Long.class))).accepts(hints);
+        assertThat(RuntimeHintsPredicates.reflection().onMethod(CashCard.class, "version")).accepts(hints);
+        assertThat(RuntimeHintsPredicates.reflection().onMethod(CashCardSummary.class, "sum")).accepts(hints);
+        assertThat(RuntimeHintsPredicates.reflection().onConstructor(MoneyJsonSerializer.class.getDeclaredConstructor())).accepts(hints);
+        assertThat(RuntimeHintsPredicates.reflection().onConstructor(MoneyJsonDeserializer.class.getDeclaredConstructor())).accepts(hints);
+        assertThat(RuntimeHintsPredicates.reflection().onType(TypeReference.of(Executors.class))).accepts(hints);
+    }
+}
@@ -0,0 +1,52 @@
+package aidenwaring.intro.cashcard;
+
+import aidenwaring.intro.cashcard.record.CashCard;
+import aidenwaring.intro.cashcard.record.Money;
+import aidenwaring.intro.cashcard.service.CashCardWriteBehindService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.annotation.DirtiesContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// A log with room for a single update (a 16 byte header, sarah1's 38 byte entry and the 4 byte end marker)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "cashcard.write-behind.enabled=true",
+        "cashcard.write-behind.directory=${java.io.tmpdir}/cashcard-write-behind-test-${random.uuid}",
+        "cashcard.write-behind.log-size=60B",
+        "cashcard.write-behind.flush-interval=PT1H",
+        "cashcard.write-behind.full-wait=PT0.1S"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class CashCardWriteBehindBackpressureTest {
+    @Autowired
+    TestRestTemplate restTemplate;
+
+    @Autowired
+    CashCardWriteBehindService writeBehindService;
+
+    @Test
+    void shouldTurnAwayUpdatesWhileTheLogIsFull() {
+        assertThat(update("19.99").getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+
+        ResponseEntity<Void> response = update("29.99");
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+
+        // A flush makes room again
+        writeBehindService.flush();
+        assertThat(update("29.99").getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+    }
+
+    private ResponseEntity<Void> update(String amount) {
+        return restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .exchange("/cashcards/99", HttpMethod.PUT, new HttpEntity<>(new CashCard(null, Money.parse(amount), null)), Void.class);
+    }
+}
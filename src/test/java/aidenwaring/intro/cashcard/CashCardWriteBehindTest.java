@@ -0,0 +1,73 @@
+package aidenwaring.intro.cashcard;
+
+import aidenwaring.intro.cashcard.record.CashCard;
+import aidenwaring.intro.cashcard.record.Money;
+import aidenwaring.intro.cashcard.service.CashCardWriteBehindService;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Flushes only when a test asks for it
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "cashcard.write-behind.enabled=true",
+        "cashcard.write-behind.directory=${java.io.tmpdir}/cashcard-write-behind-test-${random.uuid}",
+        "cashcard.write-behind.flush-interval=PT1H"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class CashCardWriteBehindTest {
+    @Autowired
+    TestRestTemplate restTemplate;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    CashCardWriteBehindService writeBehindService;
+
+    @Test
+    void shouldReadAPendingUpdateAndWriteOnlyTheLatestAmountOnFlush() {
+        for (String amount : new String[]{"19.99", "29.99"}) {
+            ResponseEntity<Void> response = restTemplate
+                    .withBasicAuth("sarah1", "abc123")
+                    .exchange("/cashcards/99", HttpMethod.PUT, new HttpEntity<>(new CashCard(null, Money.parse(amount), null)), Void.class);
+            assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+        }
+
+        ResponseEntity<String> getResponse = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/99", String.class);
+        Double amount = JsonPath.parse(getResponse.getBody()).read("$.amount");
+        assertThat(amount).isEqualTo(29.99);
+        assertThat(amountInDatabase(99)).isEqualTo(12345);
+
+        writeBehindService.flush();
+
+        assertThat(amountInDatabase(99)).isEqualTo(2999);
+        ResponseEntity<String> summary = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/summary", String.class);
+        Double sum = JsonPath.parse(summary.getBody()).read("$.sum");
+        assertThat(sum).isEqualTo(180.99);
+    }
+
+    @Test
+    void shouldNotUpdateACashCardOwnedBySomeoneElse() {
+        ResponseEntity<Void> response = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .exchange("/cashcards/102", HttpMethod.PUT, new HttpEntity<>(new CashCard(null, Money.parse("1.00"), null)), Void.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    private long amountInDatabase(long id) {
+        return jdbcTemplate.queryForObject("SELECT amount FROM cash_card WHERE id = ?", Long.class, id);
+    }
+}
@@ -0,0 +1,22 @@
+package aidenwaring.intro.cashcard;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.net.URI;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The requests of CashCardIdempotencyTest against the database-backed store, which every instance shares
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "cashcard.idempotency.store=jdbc")
+class JdbcIdempotencyStoreTest extends CashCardIdempotencyTest {
+
+    @Test
+    void shouldRecordTheCashCardTheKeyCreated() {
+        URI location = create("recorded", "250.00").getHeaders().getLocation();
+        Long cardId = jdbcTemplate.queryForObject(
+                "SELECT card_id FROM cash_card_idempotency_key WHERE owner = 'sarah1' AND idempotency_key = 'recorded'",
+                Long.class);
+        assertThat(location.getPath()).isEqualTo("/cashcards/" + cardId);
+    }
+}
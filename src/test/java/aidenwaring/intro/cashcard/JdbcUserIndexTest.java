@@ -0,0 +1,104 @@
+package aidenwaring.intro.cashcard;
+
+import aidenwaring.intro.cashcard.repository.CashCardUserRepository;
+import aidenwaring.intro.cashcard.security.JdbcUserIndex;
+import aidenwaring.intro.cashcard.security.VerifiedCredentialCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JdbcUserIndexTest {
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private VerifiedCredentialCache verifiedCredentials;
+    private JdbcUserIndex users;
+    // Counts the queries the index runs against cash_card_user
+    private final AtomicInteger queries = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .addScripts("schema.sql", "data.sql")
+                .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        verifiedCredentials = new VerifiedCredentialCache(100, Duration.ofMinutes(5));
+        CashCardUserRepository userRepository = new CashCardUserRepository(jdbcTemplate, 100) {
+            @Override
+            public void forEachEnabled(Consumer<UserRow> consumer) {
+                queries.incrementAndGet();
+                super.forEachEnabled(consumer);
+            }
+        };
+        users = new JdbcUserIndex(userRepository, verifiedCredentials, Duration.ofMinutes(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void shouldOnlyLoadTheUsersOnTheFirstLookup() {
+        users.refresh();
+        assertThat(queries).hasValue(0);
+
+        UserDetails sarah = users.loadUserByUsername("sarah1");
+        users.loadUserByUsername("kumar2");
+
+        assertThat(queries).hasValue(1);
+        assertThat(new BCryptPasswordEncoder().matches("abc123", sarah.getPassword())).isTrue();
+        assertThat(sarah.getAuthorities()).extracting("authority").containsExactly("ROLE_CARD-OWNER");
+        assertThatThrownBy(() -> users.loadUserByUsername("nobody"))
+                .isInstanceOf(UsernameNotFoundException.class);
+    }
+
+    @Test
+    void shouldPickUpChangedUsersOnRefresh() {
+        UserDetails sarah = users.loadUserByUsername("sarah1");
+        verifiedCredentials.put("sarah1", "abc123", sarah);
+        String newHash = new BCryptPasswordEncoder(4).encode("def456");
+        jdbcTemplate.update("UPDATE cash_card_user SET password = ?, updated_at = CURRENT_TIMESTAMP WHERE username = 'sarah1'",
+                newHash);
+        jdbcTemplate.update("INSERT INTO cash_card_user (username, password, roles) VALUES ('new-owner', ?, 'CARD-OWNER')",
+                newHash);
+
+        users.refresh();
+
+        assertThat(users.loadUserByUsername("sarah1").getPassword()).isEqualTo(newHash);
+        assertThat(users.loadUserByUsername("new-owner").getPassword()).isEqualTo(newHash);
+        // The old password was verified against the old hash, so it mustn't be accepted from the cache any more
+        assertThat(verifiedCredentials.get("sarah1", "abc123")).isNull();
+    }
+
+    @Test
+    void shouldDropDisabledUsersOnRefresh() {
+        users.loadUserByUsername("kumar2");
+        UserDetails sarah = users.loadUserByUsername("sarah1");
+        verifiedCredentials.put("sarah1", "abc123", sarah);
+        jdbcTemplate.update("UPDATE cash_card_user SET enabled = FALSE, updated_at = CURRENT_TIMESTAMP WHERE username = 'kumar2'");
+
+        users.refresh();
+
+        assertThatThrownBy(() -> users.loadUserByUsername("kumar2"))
+                .isInstanceOf(UsernameNotFoundException.class);
+        // Re-reading users that didn't change doesn't throw their verified credentials away
+        assertThat(verifiedCredentials.get("sarah1", "abc123")).isInstanceOf(User.class);
+    }
+}
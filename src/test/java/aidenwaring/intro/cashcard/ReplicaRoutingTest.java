@@ -0,0 +1,125 @@
+package aidenwaring.intro.cashcard;
+
+import aidenwaring.intro.cashcard.record.CashCard;
+import aidenwaring.intro.cashcard.record.Money;
+import aidenwaring.intro.cashcard.service.CashCardWriteBehindService;
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.annotation.DirtiesContext;
+
+import javax.sql.DataSource;
+import java.net.URI;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+The primary and the replica are two separate in-memory H2 databases, and nothing replicates between them,
+so which one a request was served from shows in what it sees: card 500 only exists on the replica.
+Write-behind is on too, but only flushes when a test asks for it.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "cashcard.datasource.replica.enabled=true",
+        "cashcard.datasource.replica.jdbc-url=jdbc:h2:mem:replica-${random.uuid}",
+        "cashcard.datasource.replica.username=sa",
+        "cashcard.datasource.replica.sticky-for=PT1M",
+        "cashcard.write-behind.enabled=true",
+        "cashcard.write-behind.directory=${java.io.tmpdir}/cashcard-write-behind-test-${random.uuid}",
+        "cashcard.write-behind.flush-interval=PT1H"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class ReplicaRoutingTest {
+    @Autowired
+    TestRestTemplate restTemplate;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    CashCardWriteBehindService writeBehindService;
+
+    @Autowired
+    @Qualifier("replicaDataSource")
+    DataSource replicaDataSource;
+
+    JdbcTemplate replica;
+
+    @BeforeEach
+    void setUpReplica() {
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql"), new ClassPathResource("data.sql"))
+                .execute(replicaDataSource);
+        replica = new JdbcTemplate(replicaDataSource);
+        replica.update("INSERT INTO cash_card (id, amount, owner) VALUES (500, 4200, 'kumar2')");
+    }
+
+    @Test
+    void shouldReadCashCardsFromTheReplica() {
+        ResponseEntity<String> response = restTemplate
+                .withBasicAuth("kumar2", "xyz789")
+                .getForEntity("/cashcards/500", String.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+        response = restTemplate
+                .withBasicAuth("kumar2", "xyz789")
+                .getForEntity("/cashcards", String.class);
+        DocumentContext documentContext = JsonPath.parse(response.getBody());
+        assertThat(documentContext.read("$.length()", Integer.class)).isEqualTo(2);
+    }
+
+    @Test
+    void shouldReadYourOwnWritesFromThePrimary() {
+        URI location = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .postForLocation("/cashcards", new CashCard(null, Money.parse("250.00"), null));
+        // The write went to the primary only
+        assertThat(countCashCards(jdbcTemplate, "sarah1")).isEqualTo(4);
+        assertThat(countCashCards(replica, "sarah1")).isEqualTo(3);
+
+        ResponseEntity<String> response = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity(location, String.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        response = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards", String.class);
+        assertThat(JsonPath.parse(response.getBody()).read("$.length()", Integer.class)).isEqualTo(4);
+
+        // Someone who didn't write is still served by the replica
+        response = restTemplate
+                .withBasicAuth("kumar2", "xyz789")
+                .getForEntity("/cashcards/500", String.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    void shouldReadAFlushedUpdateFromThePrimary() {
+        ResponseEntity<Void> update = restTemplate
+                .withBasicAuth("kumar2", "xyz789")
+                .exchange("/cashcards/102", HttpMethod.PUT, new HttpEntity<>(new CashCard(null, Money.parse("300.00"), null)), Void.class);
+        assertThat(update.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+
+        // The flush has no principal of its own, but still counts as kumar2 writing
+        writeBehindService.flush();
+
+        ResponseEntity<String> response = restTemplate
+                .withBasicAuth("kumar2", "xyz789")
+                .getForEntity("/cashcards/102", String.class);
+        Double amount = JsonPath.parse(response.getBody()).read("$.amount");
+        assertThat(amount).isEqualTo(300.00);
+    }
+
+    private static int countCashCards(JdbcTemplate database, String owner) {
+        return database.queryForObject("SELECT COUNT(*) FROM cash_card WHERE owner = ?", Integer.class, owner);
+    }
+}
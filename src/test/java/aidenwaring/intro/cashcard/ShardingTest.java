@@ -0,0 +1,183 @@
+package aidenwaring.intro.cashcard;
+
+import aidenwaring.intro.cashcard.record.CashCard;
+import aidenwaring.intro.cashcard.record.Money;
+import aidenwaring.intro.cashcard.sharding.ShardRebalancer;
+import aidenwaring.intro.cashcard.sharding.ShardedIdGenerator;
+import aidenwaring.intro.cashcard.sharding.Shards;
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.JsonPath;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/*
+Three in-memory H2 shards. spring.sql.init loads all of data.sql into the home shard,
+so every test starts by rebalancing the owners out to the shards they belong on.
+The other shards get the schema as soon as the Shards exist, before the application starts using them.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "cashcard.sharding.enabled=true",
+        "cashcard.sharding.shards=jdbc:h2:mem:shard0-${random.uuid},jdbc:h2:mem:shard1-${random.uuid},jdbc:h2:mem:shard2-${random.uuid}",
+        "cashcard.sharding.username=sa"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class ShardingTest {
+    @Autowired
+    TestRestTemplate restTemplate;
+
+    @Autowired
+    Shards shards;
+
+    @Autowired
+    ShardRebalancer rebalancer;
+
+    @TestConfiguration
+    static class ShardSchemas {
+        @Bean
+        static BeanPostProcessor createShardSchemas() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (bean instanceof Shards shards) {
+                        for (int shard = 1; shard < shards.count(); shard++) {
+                            new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(shards.dataSource(shard));
+                        }
+                    }
+                    return bean;
+                }
+            };
+        }
+    }
+
+    @BeforeEach
+    void rebalance() {
+        rebalancer.rebalance();
+    }
+
+    @Test
+    void shouldKeepEveryOwnersCardsAndSummaryOnTheirShard() {
+        for (String owner : List.of("sarah1", "kumar2")) {
+            for (int shard = 0; shard < shards.count(); shard++) {
+                JdbcTemplate database = new JdbcTemplate(shards.dataSource(shard));
+                int cards = database.queryForObject("SELECT COUNT(*) FROM cash_card WHERE owner = ?", Integer.class, owner);
+                int summaries = database.queryForObject("SELECT COUNT(*) FROM cash_card_summary WHERE owner = ?", Integer.class, owner);
+                boolean home = shard == shards.shardOf(owner);
+                assertThat(cards).isEqualTo(home ? (owner.equals("sarah1") ? 3 : 1) : 0);
+                assertThat(summaries).isEqualTo(home ? 1 : 0);
+            }
+        }
+        // Nothing left to move the second time
+        assertThat(rebalancer.rebalance()).isZero();
+
+        ResponseEntity<String> response = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/99", String.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        DocumentContext summary = JsonPath.parse(restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/summary", String.class).getBody());
+        assertThat(summary.read("$.count", Integer.class)).isEqualTo(3);
+        assertThat(summary.read("$.sum", Double.class)).isEqualTo(274.45);
+    }
+
+    @Test
+    void shouldCreateCashCardsWithIdsThatAreUniqueAcrossShards() {
+        URI sarahsCard = restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .postForLocation("/cashcards", new CashCard(null, Money.parse("250.00"), null));
+        URI kumarsCard = restTemplate
+                .withBasicAuth("kumar2", "xyz789")
+                .postForLocation("/cashcards", new CashCard(null, Money.parse("250.00"), null));
+
+        long sarahsId = Long.parseLong(sarahsCard.getPath().substring(sarahsCard.getPath().lastIndexOf('/') + 1));
+        long kumarsId = Long.parseLong(kumarsCard.getPath().substring(kumarsCard.getPath().lastIndexOf('/') + 1));
+        assertThat(sarahsId).isNotEqualTo(kumarsId);
+        assertThat(sarahsId % ShardedIdGenerator.MAX_SHARDS).isEqualTo(shards.shardOf("sarah1"));
+        assertThat(kumarsId % ShardedIdGenerator.MAX_SHARDS).isEqualTo(shards.shardOf("kumar2"));
+
+        assertThat(restTemplate.withBasicAuth("sarah1", "abc123").getForEntity(sarahsCard, String.class).getStatusCode())
+                .isEqualTo(HttpStatus.OK);
+        assertThat(restTemplate.withBasicAuth("kumar2", "xyz789").getForEntity(kumarsCard, String.class).getStatusCode())
+                .isEqualTo(HttpStatus.OK);
+        assertThat(restTemplate.withBasicAuth("kumar2", "xyz789").getForEntity(sarahsCard, String.class).getStatusCode())
+                .isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    void shouldNotReuseTheIdsOfCardsCreatedBeforeSharding() {
+        // Cards from before sharding, with exactly the ids the generator's first blocks would give without FIRST_ID
+        // (the first block is 1, so sarah1's first new card would have been 100 * MAX_SHARDS + her shard)
+        int sarahsShard = shards.shardOf("sarah1");
+        JdbcTemplate database = new JdbcTemplate(shards.dataSource(sarahsShard));
+        List<Object[]> olderCards = new ArrayList<>();
+        for (long n = 0; n < 300; n++) {
+            olderCards.add(new Object[]{n * ShardedIdGenerator.MAX_SHARDS + sarahsShard, 100 + n});
+        }
+        database.batchUpdate("INSERT INTO cash_card (id, amount, owner) VALUES (?, ?, 'sarah1')", olderCards);
+
+        for (int i = 0; i < 5; i++) {
+            URI created = restTemplate
+                    .withBasicAuth("sarah1", "abc123")
+                    .postForLocation("/cashcards", new CashCard(null, Money.parse("250.00"), null));
+            assertThat(created).isNotNull();
+            long id = Long.parseLong(created.getPath().substring(created.getPath().lastIndexOf('/') + 1));
+            assertThat(id).isGreaterThanOrEqualTo(ShardedIdGenerator.FIRST_ID);
+        }
+        DocumentContext olderCard = JsonPath.parse(restTemplate
+                .withBasicAuth("sarah1", "abc123")
+                .getForEntity("/cashcards/" + (100 * ShardedIdGenerator.MAX_SHARDS + sarahsShard), String.class).getBody());
+        assertThat(olderCard.read("$.amount", Double.class)).isEqualTo(2.00);
+
+        // Nothing but the generator can hand out ids any more
+        for (int shard = 0; shard < shards.count(); shard++) {
+            JdbcTemplate shardDatabase = new JdbcTemplate(shards.dataSource(shard));
+            assertThatThrownBy(() -> shardDatabase.update("INSERT INTO cash_card (amount, owner) VALUES (100, 'sarah1')"))
+                    .isInstanceOf(DataAccessException.class);
+        }
+    }
+
+    @Test
+    void shouldOnlyMoveOwnersToANewShardWhenAddingOne() {
+        Shards three = unconnectedShards(3);
+        Shards four = unconnectedShards(4);
+        int moved = 0;
+        for (int i = 0; i < 10000; i++) {
+            String owner = "owner-" + i;
+            if (three.shardOf(owner) != four.shardOf(owner)) {
+                assertThat(four.shardOf(owner)).isEqualTo(3);
+                moved++;
+            }
+        }
+        // About a quarter of the owners move to the fourth shard, the rest stay where they were
+        assertThat(moved).isBetween(2000, 3000);
+    }
+
+    // Hikari only connects on the first getConnection(), which hashing never calls
+    private static Shards unconnectedShards(int count) {
+        List<HikariDataSource> dataSources = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            dataSources.add(new HikariDataSource());
+        }
+        return new Shards(dataSources);
+    }
+}
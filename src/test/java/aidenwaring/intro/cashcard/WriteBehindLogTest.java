@@ -0,0 +1,83 @@
+package aidenwaring.intro.cashcard;
+
+import aidenwaring.intro.cashcard.repository.WriteBehindLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WriteBehindLogTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldReadBackWhatWasAppendedAfterReopening() throws IOException {
+        Path file = directory.resolve("cashcards.log");
+        try (WriteBehindLog log = new WriteBehindLog(file, 4096, false)) {
+            log.reset(1);
+            assertThat(log.append(99, 1999, "sarah1")).isTrue();
+            assertThat(log.append(99, 2999, "sarah1")).isTrue();
+            assertThat(log.append(102, 500, "kumar2")).isTrue();
+        }
+
+        try (WriteBehindLog log = new WriteBehindLog(file, 4096, false)) {
+            assertThat(log.generation()).isEqualTo(1);
+            assertThat(log.read()).containsExactly(
+                    new WriteBehindLog.Entry(99, 1999, "sarah1"),
+                    new WriteBehindLog.Entry(99, 2999, "sarah1"),
+                    new WriteBehindLog.Entry(102, 500, "kumar2"));
+        }
+    }
+
+    @Test
+    void shouldNotReadEntriesFromBeforeAReset() throws IOException {
+        Path file = directory.resolve("cashcards.log");
+        try (WriteBehindLog log = new WriteBehindLog(file, 4096, false)) {
+            log.reset(1);
+            log.append(99, 1999, "sarah1");
+            log.append(100, 2999, "sarah1");
+            log.reset(2);
+            log.append(101, 500, "sarah1");
+        }
+
+        try (WriteBehindLog log = new WriteBehindLog(file, 4096, false)) {
+            // Generation 1 is still in the file, but only generation 2 counts
+            assertThat(log.read()).containsExactly(new WriteBehindLog.Entry(101, 500, "sarah1"));
+        }
+    }
+
+    @Test
+    void shouldStopReadingAtACorruptEntry() throws IOException {
+        Path file = directory.resolve("cashcards.log");
+        try (WriteBehindLog log = new WriteBehindLog(file, 4096, false)) {
+            log.reset(1);
+            log.append(99, 1999, "sarah1");
+            log.append(100, 2999, "sarah1");
+        }
+        // Flip a byte in the amount of the second entry: 16 bytes of header, 38 of the first entry, then 4 + 8 + 8
+        long amountOfSecondEntry = 16 + 38 + 20;
+        try (RandomAccessFile raw = new RandomAccessFile(file.toFile(), "rw")) {
+            raw.seek(amountOfSecondEntry);
+            int original = raw.read();
+            raw.seek(amountOfSecondEntry);
+            raw.write(original ^ 0xFF);
+        }
+
+        try (WriteBehindLog log = new WriteBehindLog(file, 4096, false)) {
+            assertThat(log.read()).containsExactly(new WriteBehindLog.Entry(99, 1999, "sarah1"));
+        }
+    }
+
+    @Test
+    void shouldRefuseAnEntryThatDoesNotFit() throws IOException {
+        try (WriteBehindLog log = new WriteBehindLog(directory.resolve("cashcards.log"), 64, false)) {
+            log.reset(1);
+            assertThat(log.append(99, 1999, "sarah1")).isTrue();
+            assertThat(log.append(100, 2999, "sarah1")).isFalse();
+        }
+    }
+}
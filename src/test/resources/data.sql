@@ -1,4 +1,13 @@
-INSERT INTO CASH_CARD(ID, AMOUNT, OWNER) VALUES (99, 123.45, 'sarah1');
-INSERT INTO CASH_CARD(ID, AMOUNT, OWNER) VALUES (100, 1.00, 'sarah1');
-INSERT INTO CASH_CARD(ID, AMOUNT, OWNER) VALUES (101, 150.00, 'sarah1');
-INSERT INTO CASH_CARD(ID, AMOUNT, OWNER) VALUES (102, 200.00, 'kumar2');
\ No newline at end of file
+-- Amounts are in minor units (cents): 12345 is 123.45
+INSERT INTO CASH_CARD(ID, AMOUNT, OWNER) VALUES (99, 12345, 'sarah1');
+INSERT INTO CASH_CARD(ID, AMOUNT, OWNER) VALUES (100, 100, 'sarah1');
+INSERT INTO CASH_CARD(ID, AMOUNT, OWNER) VALUES (101, 15000, 'sarah1');
+INSERT INTO CASH_CARD(ID, AMOUNT, OWNER) VALUES (102, 20000, 'kumar2');
+
+-- The summaries of the cards above, as the application would have maintained them
+INSERT INTO CASH_CARD_SUMMARY(OWNER, CARD_COUNT, TOTAL, MIN_AMOUNT, MAX_AMOUNT) VALUES ('sarah1', 3, 27445, 100, 15000);
+INSERT INTO CASH_CARD_SUMMARY(OWNER, CARD_COUNT, TOTAL, MIN_AMOUNT, MAX_AMOUNT) VALUES ('kumar2', 1, 20000, 20000, 20000);
+-- Passwords abc123, qrs456 and xyz789, hashed with BCrypt (strength 10)
+INSERT INTO CASH_CARD_USER(USERNAME, PASSWORD, ROLES) VALUES ('sarah1', '$2a$10$92768/GbWJRjPwb1TkUYI.5G9sjwtNqsZ.pqXHyHSLV6L7JUxZRua', 'CARD-OWNER');
+INSERT INTO CASH_CARD_USER(USERNAME, PASSWORD, ROLES) VALUES ('hank-owns-no-cards', '$2a$10$IX2XhDY.B5MSJzAXPj3pWe9806Cj87tYPoYVfTchDVOmkEI/lO7bu', 'NON-OWNER');
+INSERT INTO CASH_CARD_USER(USERNAME, PASSWORD, ROLES) VALUES ('kumar2', '$2a$10$SgmtlwWZQofyhfduVVG2fOzJ/CVHod5DGa5oO9sZg6ijOIMnlk18C', 'CARD-OWNER');
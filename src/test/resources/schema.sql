@@ -1,6 +1,76 @@
 CREATE TABLE cash_card
 (
     ID       BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
-    AMOUNT   NUMBER NOT NULL DEFAULT 0,
-    OWNER    VARCHAR(256) NOT NULL
-);
\ No newline at end of file
+    AMOUNT   BIGINT NOT NULL DEFAULT 0, -- in minor units (cents), see Money
+    OWNER    VARCHAR(256) NOT NULL,
+    VERSION  BIGINT NOT NULL DEFAULT 0 -- bumped by every update, served as the card's ETag
+);
+
+-- Backs both the default "amount" sort and keyset (seek) paging, which continues from the last (amount, id) seen.
+-- With VERSION it holds every column of the table, so a page is read from the index alone, never from the table
+CREATE INDEX cash_card_owner_amount_id_version ON cash_card (OWNER, AMOUNT, ID, VERSION);
+
+-- Blocks of card ids, only used when the cards are sharded (see ShardedIdGenerator, which then also drops ID's identity)
+CREATE SEQUENCE cash_card_id_block_seq START WITH 1;
+
+-- Per-owner aggregate behind GET /cashcards/summary, maintained by every write to cash_card (see CashCardSummaryRepository)
+CREATE TABLE cash_card_summary
+(
+    OWNER      VARCHAR(256) NOT NULL PRIMARY KEY,
+    CARD_COUNT BIGINT NOT NULL DEFAULT 0,
+    TOTAL      BIGINT NOT NULL DEFAULT 0, -- in minor units (cents), like cash_card.AMOUNT
+    MIN_AMOUNT BIGINT,                    -- NULL while the owner has no cards
+    MAX_AMOUNT BIGINT
+);
+
+-- Transactional outbox: a row per card created, updated or deleted, inserted in the same transaction as the change.
+-- CashCardEventRelay numbers the rows (SEQ) in the order it finds them committed; consumers resume after a SEQ
+CREATE TABLE cash_card_event
+(
+    ID          BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, -- insert order, which isn't commit order
+    SEQ         BIGINT,                                 -- NULL until the relay has numbered the event
+    TYPE        VARCHAR(16) NOT NULL,                   -- CREATED, UPDATED or DELETED
+    CARD_ID     BIGINT NOT NULL,
+    OWNER       VARCHAR(256) NOT NULL,
+    AMOUNT      BIGINT,                                 -- the new amount, in minor units; NULL for DELETED
+    OCCURRED_AT TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE UNIQUE INDEX cash_card_event_seq ON cash_card_event (SEQ);
+-- GET /cashcards/changes catching up on one owner's events
+CREATE INDEX cash_card_event_owner_seq ON cash_card_event (OWNER, SEQ);
+
+-- The last SEQ the relay handed out (its row is also the lock relays take turns on), and the last one pruned
+CREATE TABLE cash_card_event_relay
+(
+    NAME     VARCHAR(32) NOT NULL PRIMARY KEY,
+    POSITION BIGINT NOT NULL
+);
+
+INSERT INTO cash_card_event_relay (NAME, POSITION) VALUES ('numbered', 0), ('pruned', 0);
+
+-- Idempotency-Key headers of POST /cashcards, when cashcard.idempotency.store=jdbc (see JdbcIdempotencyStore).
+-- The row is inserted before the card, in the same transaction, so a concurrent retry with the key waits on it
+CREATE TABLE cash_card_idempotency_key
+(
+    OWNER           VARCHAR(256) NOT NULL,
+    IDEMPOTENCY_KEY VARCHAR(255) NOT NULL,
+    AMOUNT          BIGINT,        -- the request's amount in minor units, to tell a retry from a reused key
+    CARD_ID         BIGINT,        -- the card the key created; only NULL before the transaction commits
+    CREATED_AT      TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (OWNER, IDEMPOTENCY_KEY)
+);
+
+CREATE INDEX cash_card_idempotency_key_created_at ON cash_card_idempotency_key (CREATED_AT);
+
+-- Card owners' logins, held in memory by JdbcUserIndex. Passwords are stored as BCrypt hashes, never hashed at startup
+CREATE TABLE cash_card_user
+(
+    USERNAME   VARCHAR(256) NOT NULL PRIMARY KEY,
+    PASSWORD   VARCHAR(100) NOT NULL,                    -- BCrypt hash
+    ROLES      VARCHAR(256) NOT NULL,                    -- comma-separated, without the ROLE_ prefix
+    ENABLED    BOOLEAN NOT NULL DEFAULT TRUE,            -- disable users rather than deleting them, so the index notices
+    UPDATED_AT TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP -- set by every change; the index re-reads rows changed since its last read
+);
+
+CREATE INDEX cash_card_user_updated_at ON cash_card_user (UPDATED_AT);